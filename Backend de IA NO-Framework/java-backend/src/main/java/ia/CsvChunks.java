@@ -0,0 +1,99 @@
+package ia;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Twin of hf/CsvChunks.java in the HF engine; keep parseDecimal in sync.
+final class CsvChunks {
+    private static final double[] POW10 = new double[19];
+    static {
+        POW10[0] = 1.0;
+        for (int i=1;i<POW10.length;i++) POW10[i] = POW10[i-1] * 10.0;
+    }
+
+    private CsvChunks() {}
+
+    static List<long[]> split(FileChannel ch, int chunkBytes, boolean lines) throws IOException {
+        long size = ch.size();
+        List<long[]> ranges = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(size, start + chunkBytes);
+            while (lines && end < size) {
+                probe.clear();
+                int n = ch.read(probe, end);
+                if (n <= 0) {
+                    end = size;
+                    break;
+                }
+                int nl = -1;
+                for (int i=0;i<n;i++) {
+                    if (probe.get(i) == '\n') {
+                        nl = i;
+                        break;
+                    }
+                }
+                if (nl >= 0) {
+                    end += nl + 1;
+                    break;
+                }
+                end += n;
+            }
+            ranges.add(new long[] { start, Math.min(end, size) });
+            start = end;
+        }
+        return ranges;
+    }
+
+    static double parseDecimal(ByteBuffer buf, int p, int end) {
+        while (p < end && buf.get(p) == ' ') p++;
+        while (end > p && buf.get(end - 1) == ' ') end--;
+        if (p == end) return Double.NaN;
+        int start = p;
+        boolean neg = false;
+        if (buf.get(p) == '-' || buf.get(p) == '+') {
+            neg = buf.get(p) == '-';
+            p++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean dot = false;
+        boolean any = false;
+        for (; p < end; p++) {
+            byte b = buf.get(p);
+            if (b >= '0' && b <= '9') {
+                any = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) digits++;
+                    if (dot) scale++;
+                } else if (!dot) {
+                    return slowParse(buf, start, end);
+                }
+            } else if (b == '.' && !dot) {
+                dot = true;
+            } else {
+                return slowParse(buf, start, end);
+            }
+        }
+        if (!any) return Double.NaN;
+        double v = scale < POW10.length ? mantissa / POW10[scale] : slowParse(buf, start, end);
+        return neg ? -v : v;
+    }
+
+    private static double slowParse(ByteBuffer buf, int p, int end) {
+        byte[] tmp = new byte[end - p];
+        for (int i=0;i<tmp.length;i++) tmp[i] = buf.get(p + i);
+        try {
+            return Double.parseDouble(new String(tmp, StandardCharsets.US_ASCII).trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package ia;
+
+import java.util.Random;
+
+public class DenseModel {
+    public enum Activation { LINEAR, RELU, TANH }
+
+    public static final class Layer {
+        public final int in, out;
+        public final double[] w;
+        public final double[] b;
+        public final Activation activation;
+
+        Layer(int in, int out, double[] w, double[] b, Activation activation) {
+            if (w.length != in * out || b.length != out) throw new IllegalArgumentException("layer shape mismatch");
+            this.in = in;
+            this.out = out;
+            this.w = w;
+            this.b = b;
+            this.activation = activation;
+        }
+    }
+
+    private final Layer[] layers;
+
+    public DenseModel(Layer... layers) {
+        if (layers.length == 0) throw new IllegalArgumentException("no layers");
+        for (int i=1;i<layers.length;i++) {
+            if (layers[i].in != layers[i-1].out) throw new IllegalArgumentException("layer " + i + " expects " + layers[i].in + " inputs, got " + layers[i-1].out);
+        }
+        this.layers = layers;
+    }
+
+    public static DenseModel linear(double[] w, double b) {
+        return new DenseModel(new Layer(w.length, 1, w.clone(), new double[] { b }, Activation.LINEAR));
+    }
+
+    public static DenseModel of(JobManager.Weights w) {
+        return linear(new double[] { w.w }, w.b);
+    }
+
+    public static DenseModel mlp(long seed, int... sizes) {
+        if (sizes.length < 2) throw new IllegalArgumentException("need input and output sizes");
+        Random r = new Random(seed);
+        Layer[] ls = new Layer[sizes.length - 1];
+        for (int i=0;i<ls.length;i++) {
+            int in = sizes[i], out = sizes[i+1];
+            double[] w = new double[in * out];
+            double scale = Math.sqrt(2.0 / in);
+            for (int j=0;j<w.length;j++) w[j] = r.nextGaussian() * scale;
+            ls[i] = new Layer(in, out, w, new double[out], i == ls.length - 1 ? Activation.LINEAR : Activation.RELU);
+        }
+        return new DenseModel(ls);
+    }
+
+    public int inputs() { return layers[0].in; }
+    public int outputs() { return layers[layers.length - 1].out; }
+    public int depth() { return layers.length; }
+    public Layer layer(int i) { return layers[i]; }
+
+    public long parameters() {
+        long n = 0;
+        for (Layer l : layers) n += l.w.length + l.b.length;
+        return n;
+    }
+
+    public void predict(double[] x, double[] out) {
+        if (x.length < inputs() || out.length < outputs()) throw new IllegalArgumentException("bad vector size");
+        double[] cur = x;
+        for (int i=0;i<layers.length;i++) {
+            Layer l = layers[i];
+            double[] next = i == layers.length - 1 ? out : new double[l.out];
+            Kernels.gemv(l.w, l.out, l.in, cur, 0, l.b, next, 0);
+            activate(l.activation, next, l.out);
+            cur = next;
+        }
+    }
+
+    public double predict(double[] x) {
+        double[] out = new double[outputs()];
+        predict(x, out);
+        return out[0];
+    }
+
+    public void predictBatch(double[] xs, int rows, double[] out) {
+        if (xs.length < rows * inputs() || out.length < rows * outputs()) throw new IllegalArgumentException("bad batch size");
+        forward(xs, rows, null, out);
+    }
+
+    private void forward(double[] xs, int rows, double[][] acts, double[] out) {
+        double[] cur = xs;
+        for (int i=0;i<layers.length;i++) {
+            Layer l = layers[i];
+            double[] next = i == layers.length - 1 && out != null ? out : new double[rows * l.out];
+            Kernels.gemmNT(cur, rows, l.in, l.w, l.out, l.b, next);
+            activate(l.activation, next, rows * l.out);
+            if (acts != null) acts[i + 1] = next;
+            cur = next;
+        }
+    }
+
+    public double train(double[] xs, double[] ys, int rows, int epochs, int batchSize, double learningRate) {
+        if (xs.length < rows * inputs() || ys.length < rows * outputs()) throw new IllegalArgumentException("bad training set size");
+        int batch = Math.max(1, Math.min(batchSize, rows));
+        int in = inputs(), outs = outputs();
+        double[] bx = new double[batch * in];
+        double[] by = new double[batch * outs];
+        double[][] acts = new double[layers.length + 1][];
+        double[][] gw = new double[layers.length][];
+        for (int i=0;i<layers.length;i++) gw[i] = new double[layers[i].w.length];
+        double loss = Double.NaN;
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            double sum = 0.0;
+            for (int off = 0; off < rows; off += batch) {
+                int n = Math.min(batch, rows - off);
+                System.arraycopy(xs, off * in, bx, 0, n * in);
+                System.arraycopy(ys, off * outs, by, 0, n * outs);
+                sum += step(bx, by, n, acts, gw, learningRate);
+            }
+            loss = sum / ((double) rows * outs);
+        }
+        return loss;
+    }
+
+    private double step(double[] bx, double[] by, int n, double[][] acts, double[][] gw, double lr) {
+        acts[0] = bx;
+        forward(bx, n, acts, null);
+        int outs = outputs();
+        double[] y = acts[layers.length];
+        double[] g = new double[n * outs];
+        double sum = 0.0;
+        for (int i=0;i<n*outs;i++) {
+            double e = y[i] - by[i];
+            sum += e * e;
+            g[i] = 2.0 * e / n;
+        }
+        for (int li = layers.length - 1; li >= 0; li--) {
+            Layer l = layers[li];
+            derive(l.activation, acts[li + 1], g, n * l.out);
+            Kernels.gemmTN(g, n, l.out, acts[li], l.in, gw[li]);
+            double[] prev = li > 0 ? new double[n * l.in] : null;
+            if (prev != null) Kernels.gemmNN(g, n, l.out, l.w, l.in, prev);
+            for (int r=0;r<n;r++) Kernels.axpy(-lr, g, r * l.out, l.b, 0, l.out);
+            Kernels.axpy(-lr, gw[li], 0, l.w, 0, l.w.length);
+            g = prev;
+        }
+        return sum;
+    }
+
+    private static void activate(Activation a, double[] v, int n) {
+        if (a == Activation.RELU) {
+            for (int i=0;i<n;i++) if (v[i] < 0.0) v[i] = 0.0;
+        } else if (a == Activation.TANH) {
+            for (int i=0;i<n;i++) v[i] = Math.tanh(v[i]);
+        }
+    }
+
+    private static void derive(Activation a, double[] y, double[] g, int n) {
+        if (a == Activation.RELU) {
+            for (int i=0;i<n;i++) if (y[i] <= 0.0) g[i] = 0.0;
+        } else if (a == Activation.TANH) {
+            for (int i=0;i<n;i++) g[i] *= 1.0 - y[i] * y[i];
+        }
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\"layers\":[");
+        for (int i=0;i<layers.length;i++) {
+            Layer l = layers[i];
+            if (i>0) sb.append(',');
+            sb.append("{\"in\":").append(l.in).append(",\"out\":").append(l.out).append(",\"activation\":\"").append(l.activation).append("\"}");
+        }
+        return sb.append("],\"parameters\":").append(parameters()).append('}').toString();
+    }
+}
@@ -3,6 +3,9 @@ package ia;
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -11,12 +14,16 @@ public class IARustAdapter {
     public enum Mode { JNI, IPC, JAVA }
     private Mode mode = Mode.JAVA;
     private Process ipcProcess;
+    static final int DIRECT_CHUNK = 8192;
+    private final ThreadLocal<ByteBuffer> direct = ThreadLocal.withInitial(
+            () -> ByteBuffer.allocateDirect(DIRECT_CHUNK * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN));
 
     public IARustAdapter() {
         init();
     }
 
     private native String iaExecuteJNI(String requestJson);
+    private native int iaInferDirect(ByteBuffer xs, int count, double w, double b);
 
     private void init() {
         if (tryLoadNative()) {
@@ -78,6 +85,55 @@ public class IARustAdapter {
         }
     }
 
+    public Mode mode() { return mode; }
+
+    public int inferBatch(JobManager.Weights weights, double[] xs, double[] out) {
+        return inferBatch(weights, xs, out, Math.min(xs.length, out.length));
+    }
+
+    public int inferBatch(JobManager.Weights weights, double[] xs, double[] out, int n) {
+        switch (mode) {
+            case JNI:
+                return inferDirect(weights, xs, out, n);
+            case IPC:
+                return inferIpc(weights, xs, out, n);
+            default:
+                Kernels.affine(weights.w, weights.b, xs, 0, out, 0, n);
+                return n;
+        }
+    }
+
+    private int inferDirect(JobManager.Weights weights, double[] xs, double[] out, int n) {
+        ByteBuffer buf = direct.get();
+        DoubleBuffer view = buf.asDoubleBuffer();
+        for (int off = 0; off < n; off += DIRECT_CHUNK) {
+            int len = Math.min(DIRECT_CHUNK, n - off);
+            view.clear();
+            view.put(xs, off, len);
+            if (iaInferDirect(buf, len, weights.w, weights.b) != len) return -1;
+            view.clear();
+            view.get(out, off, len);
+        }
+        return n;
+    }
+
+    private int inferIpc(JobManager.Weights weights, double[] xs, double[] out, int n) {
+        double[] ys = new double[Math.min(n, DIRECT_CHUNK)];
+        for (int off = 0; off < n; off += DIRECT_CHUNK) {
+            int len = Math.min(DIRECT_CHUNK, n - off);
+            StringBuilder req = new StringBuilder(64 + len * 20);
+            req.append("{\"op\":\"infer_batch\",\"weights\":{\"w\":").append(weights.w).append(",\"b\":").append(weights.b).append("},\"xs\":[");
+            for (int i=0;i<len;i++) {
+                if (i>0) req.append(',');
+                req.append(xs[off + i]);
+            }
+            req.append("]}");
+            if (JobManager.extractDoubles(executeIpc(req.toString()), "ys", ys) != len) return -1;
+            System.arraycopy(ys, 0, out, off, len);
+        }
+        return n;
+    }
+
     private String executeIpc(String requestJson) {
         try (Socket s = new Socket()) {
             s.connect(new InetSocketAddress("127.0.0.1", 9095), 500);
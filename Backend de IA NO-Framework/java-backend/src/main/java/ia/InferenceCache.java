@@ -0,0 +1,168 @@
+package ia;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class InferenceCache {
+    private static final VarHandle LOCKS = MethodHandles.arrayElementVarHandle(long[].class);
+    static final int WAYS = 8;
+
+    private final int sets;
+    private final int setMask;
+    private final double quantum;
+    private final double inverseQuantum;
+    private final long[] locks;
+    private final long[] keys;
+    private final long[] versions;
+    private final double[] values;
+    private final long[] stamps;
+    private final AtomicLong clock = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final AtomicLong currentVersion = new AtomicLong(Long.MIN_VALUE);
+
+    public InferenceCache(int capacity) {
+        this(capacity, 0.0);
+    }
+
+    public InferenceCache(int capacity, double quantum) {
+        if (quantum < 0 || Double.isNaN(quantum)) throw new IllegalArgumentException("quantum must be >= 0");
+        int s = Integer.highestOneBit(Math.max(1, (capacity + WAYS - 1) / WAYS));
+        if (s * WAYS < capacity) s <<= 1;
+        this.sets = s;
+        this.setMask = s - 1;
+        this.quantum = quantum;
+        this.inverseQuantum = quantum > 0 ? 1.0 / quantum : 0.0;
+        this.locks = new long[s];
+        this.keys = new long[s * WAYS];
+        this.versions = new long[s * WAYS];
+        this.values = new double[s * WAYS];
+        this.stamps = new long[s * WAYS];
+        Arrays.fill(versions, Long.MIN_VALUE);
+    }
+
+    long key(double x) {
+        if (quantum > 0) return Math.round(x * inverseQuantum);
+        return x == 0.0 ? 0L : Double.doubleToLongBits(x);
+    }
+
+    private int setOf(long key, long version) {
+        long h = key ^ (version * 0x9E3779B97F4A7C15L);
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return (int) (h ^ (h >>> 33)) & setMask;
+    }
+
+    private boolean current(long version) {
+        long cur = currentVersion.get();
+        if (version == cur) return true;
+        if (version < cur) return false;
+        currentVersion.accumulateAndGet(version, Math::max);
+        return true;
+    }
+
+    public double get(long version, double x, double missing) {
+        if (!Double.isFinite(x) || !current(version)) {
+            misses.increment();
+            return missing;
+        }
+        long k = key(x);
+        int set = setOf(k, version);
+        int base = set * WAYS;
+        while (true) {
+            long v1 = (long) LOCKS.getAcquire(locks, set);
+            if ((v1 & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            int hit = -1;
+            for (int i = base; i < base + WAYS; i++) {
+                if (keys[i] == k && versions[i] == version) {
+                    hit = i;
+                    break;
+                }
+            }
+            double y = hit >= 0 ? values[hit] : missing;
+            VarHandle.loadLoadFence();
+            if ((long) LOCKS.getOpaque(locks, set) != v1) continue;
+            if (hit >= 0) {
+                if (LOCKS.compareAndSet(locks, set, v1, v1 + 1)) {
+                    stamps[hit] = clock.getPlain() + 1;
+                    LOCKS.setRelease(locks, set, v1);
+                }
+                hits.increment();
+            } else {
+                misses.increment();
+            }
+            return y;
+        }
+    }
+
+    public void put(long version, double x, double y) {
+        if (!Double.isFinite(x) || !current(version)) return;
+        long k = key(x);
+        int set = setOf(k, version);
+        int base = set * WAYS;
+        long v;
+        while (true) {
+            v = (long) LOCKS.getVolatile(locks, set);
+            if ((v & 1) == 0 && LOCKS.compareAndSet(locks, set, v, v + 1)) break;
+            Thread.onSpinWait();
+        }
+        long current = currentVersion.get();
+        int victim = base;
+        long oldest = Long.MAX_VALUE;
+        for (int i = base; i < base + WAYS; i++) {
+            if (keys[i] == k && versions[i] == version) {
+                victim = i;
+                oldest = Long.MIN_VALUE;
+                break;
+            }
+            long age = versions[i] != current ? Long.MIN_VALUE + 1 : stamps[i];
+            if (age < oldest) {
+                oldest = age;
+                victim = i;
+            }
+        }
+        if (oldest != Long.MIN_VALUE && versions[victim] == current) evictions.increment();
+        keys[victim] = k;
+        versions[victim] = version;
+        values[victim] = y;
+        stamps[victim] = clock.incrementAndGet();
+        LOCKS.setRelease(locks, set, v + 2);
+    }
+
+    public void clear() {
+        for (int set = 0; set < sets; set++) {
+            long v;
+            while (true) {
+                v = (long) LOCKS.getVolatile(locks, set);
+                if ((v & 1) == 0 && LOCKS.compareAndSet(locks, set, v, v + 1)) break;
+                Thread.onSpinWait();
+            }
+            Arrays.fill(versions, set * WAYS, set * WAYS + WAYS, Long.MIN_VALUE);
+            LOCKS.setRelease(locks, set, v + 2);
+        }
+    }
+
+    public long hits() { return hits.sum(); }
+    public long misses() { return misses.sum(); }
+    public long evictions() { return evictions.sum(); }
+    public int capacity() { return sets * WAYS; }
+    public double quantum() { return quantum; }
+    public long version() { return currentVersion.get(); }
+
+    public double hitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total > 0 ? (double) h / total : 0.0;
+    }
+
+    public String toJson() {
+        return "{\"capacity\":" + capacity() + ",\"quantum\":" + quantum + ",\"version\":" + version() + ",\"hits\":" + hits() + ",\"misses\":" + misses() + ",\"evictions\":" + evictions() + ",\"hit_rate\":" + hitRate() + "}";
+    }
+}
@@ -0,0 +1,132 @@
+package ia;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class InferenceScheduler implements AutoCloseable {
+    static final class Request {
+        final JobManager.Weights weights;
+        final double x;
+        final CompletableFuture<Double> result = new CompletableFuture<>();
+
+        Request(JobManager.Weights weights, double x) {
+            this.weights = weights;
+            this.x = x;
+        }
+    }
+
+    private final JobManager jobs;
+    private final IARustAdapter adapter;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread dispatcher;
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private volatile boolean running = true;
+    private volatile boolean drained = false;
+
+    public InferenceScheduler(JobManager jobs, IARustAdapter adapter) {
+        this(jobs, adapter, 256, 200_000L);
+    }
+
+    public InferenceScheduler(JobManager jobs, IARustAdapter adapter, int maxBatch, long maxDelayNanos) {
+        this.jobs = jobs;
+        this.adapter = adapter;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxDelayNanos = Math.max(0L, maxDelayNanos);
+        this.dispatcher = new Thread(this::dispatchLoop, "ia-infer-scheduler");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    public CompletableFuture<Double> submit(JobManager.Weights weights, double x) {
+        Request r = new Request(weights, x);
+        if (!running) {
+            r.result.completeExceptionally(new RejectedExecutionException("scheduler closed"));
+            return r.result;
+        }
+        queue.add(r);
+        if (drained && queue.remove(r)) {
+            r.result.completeExceptionally(new RejectedExecutionException("scheduler closed"));
+        }
+        return r.result;
+    }
+
+    private void dispatchLoop() {
+        Request[] pending = new Request[maxBatch];
+        double[] xs = new double[maxBatch];
+        double[] ys = new double[maxBatch];
+        Request carry = null;
+        while (running || carry != null || !queue.isEmpty()) {
+            try {
+                Request first = carry != null ? carry : queue.poll(1, TimeUnit.MILLISECONDS);
+                carry = null;
+                if (first == null) continue;
+                int n = 0;
+                pending[n++] = first;
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (n < maxBatch) {
+                    Request r = queue.poll();
+                    if (r == null) {
+                        long wait = deadline - System.nanoTime();
+                        if (wait <= 0 || !running) break;
+                        r = queue.poll(wait, TimeUnit.NANOSECONDS);
+                        if (r == null) break;
+                    }
+                    if (r.weights != first.weights) {
+                        carry = r;
+                        break;
+                    }
+                    pending[n++] = r;
+                }
+                flush(pending, n, xs, ys);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        drained = true;
+        Request r;
+        while ((r = queue.poll()) != null) r.result.completeExceptionally(new RejectedExecutionException("scheduler closed"));
+    }
+
+    private void flush(Request[] pending, int n, double[] xs, double[] ys) {
+        for (int i=0;i<n;i++) xs[i] = pending[i].x;
+        try {
+            int got = n == 1
+                    ? single(pending[0], ys)
+                    : jobs.inferRustBatch(pending[0].weights, xs, n, ys, adapter);
+            if (got != n) throw new IllegalStateException("batch returned " + got + " of " + n + " results");
+            for (int i=0;i<n;i++) pending[i].result.complete(ys[i]);
+        } catch (RuntimeException e) {
+            for (int i=0;i<n;i++) pending[i].result.completeExceptionally(e);
+        }
+        for (int i=0;i<n;i++) pending[i] = null;
+        batches.incrementAndGet();
+        requests.addAndGet(n);
+    }
+
+    private int single(Request r, double[] ys) {
+        ys[0] = jobs.inferRust(r.weights, r.x, adapter);
+        return 1;
+    }
+
+    public long batches() { return batches.get(); }
+    public long requests() { return requests.get(); }
+    public int maxBatch() { return maxBatch; }
+    public long maxDelayNanos() { return maxDelayNanos; }
+
+    public void close() {
+        running = false;
+        try {
+            dispatcher.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package ia;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class InferenceServer implements AutoCloseable {
+    static final int STREAM_CHUNK = 1024;
+
+    static final class Latency {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+
+        void record(long nanos) {
+            long v = Math.max(1, nanos);
+            buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(v));
+            count.increment();
+            totalNanos.add(v);
+        }
+
+        long percentile(double p) {
+            long n = 0;
+            long[] snap = new long[64];
+            for (int i=0;i<64;i++) {
+                snap[i] = buckets.get(i);
+                n += snap[i];
+            }
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(p * n);
+            long seen = 0;
+            for (int i=0;i<64;i++) {
+                seen += snap[i];
+                if (seen >= rank) return (2L << i) - 1;
+            }
+            return Long.MAX_VALUE;
+        }
+
+        String toJson() {
+            long n = count.sum();
+            double mean = n > 0 ? (double) totalNanos.sum() / n : 0.0;
+            return "{\"count\":" + n + ",\"mean_ns\":" + mean + ",\"p50_ns\":" + percentile(0.50) + ",\"p99_ns\":" + percentile(0.99) + ",\"p999_ns\":" + percentile(0.999) + "}";
+        }
+    }
+
+    private final ModelRegistry registry;
+    private final JobManager jobs;
+    private final IARustAdapter adapter;
+    private final InferenceScheduler scheduler;
+    private final InferenceCache cache;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final Latency predictLatency = new Latency();
+    private final Latency batchLatency = new Latency();
+    private final LongAdder errors = new LongAdder();
+
+    public InferenceServer(ModelRegistry registry, JobManager jobs, IARustAdapter adapter, int port) {
+        this(registry, jobs, adapter, port, new InferenceCache(1 << 16));
+    }
+
+    public InferenceServer(ModelRegistry registry, JobManager jobs, IARustAdapter adapter, int port, InferenceCache cache) {
+        this.registry = registry;
+        this.jobs = jobs;
+        this.adapter = adapter;
+        this.cache = cache;
+        this.scheduler = new InferenceScheduler(jobs, adapter);
+        ExecutorService vt = virtualThreadExecutor();
+        this.virtualThreads = vt != null;
+        this.executor = vt != null ? vt : Executors.newFixedThreadPool(Math.max(8, Runtime.getRuntime().availableProcessors() * 8), r -> {
+            Thread t = new Thread(r, "ia-http");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        server.setExecutor(executor);
+        server.createContext("/predict", ex -> handle(ex, this::predict));
+        server.createContext("/predict/batch", ex -> handle(ex, this::predictBatch));
+        server.createContext("/model", ex -> handle(ex, e -> send(e, 200, currentModel().toJson())));
+        server.createContext("/stats", ex -> handle(ex, e -> send(e, 200, statsJson())));
+    }
+
+    static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    interface Handler {
+        void handle(HttpExchange ex) throws Exception;
+    }
+
+    private void handle(HttpExchange ex, Handler h) throws IOException {
+        try {
+            h.handle(ex);
+        } catch (IllegalArgumentException e) {
+            errors.increment();
+            fail(ex, 400, escape(String.valueOf(e.getMessage())));
+        } catch (Exception e) {
+            errors.increment();
+            fail(ex, 500, e.getClass().getSimpleName());
+        } finally {
+            ex.close();
+        }
+    }
+
+    private static void fail(HttpExchange ex, int status, String error) throws IOException {
+        String json = "{\"ok\":false,\"error\":\"" + error + "\"}";
+        if (ex.getResponseCode() == -1) {
+            send(ex, status, json);
+            return;
+        }
+        try {
+            ex.getResponseBody().write((json + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ignored) {
+        }
+    }
+
+    static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 8);
+        for (int i=0;i<s.length();i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private ModelRegistry.Model currentModel() {
+        ModelRegistry.Model m = registry.current();
+        if (m == null) throw new IllegalStateException("no model loaded");
+        return m;
+    }
+
+    private void predict(HttpExchange ex) throws Exception {
+        long start = System.nanoTime();
+        double x = "GET".equals(ex.getRequestMethod())
+                ? queryDouble(ex.getRequestURI().getRawQuery(), "x")
+                : bodyDouble(readBody(ex), "x");
+        ModelRegistry.Model m = currentModel();
+        double y = cache.get(m.version, x, Double.NaN);
+        if (Double.isNaN(y)) {
+            try {
+                y = scheduler.submit(m.weights, x).get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+            cache.put(m.version, x, y);
+        }
+        send(ex, 200, "{\"ok\":true,\"y\":" + y + ",\"version\":" + m.version + "}");
+        predictLatency.record(System.nanoTime() - start);
+    }
+
+    private void predictBatch(HttpExchange ex) throws Exception {
+        long start = System.nanoTime();
+        String body = readBody(ex);
+        double[] xs = parseArray(body, "xs");
+        ModelRegistry.Model m = currentModel();
+        String accept = ex.getRequestHeaders().getFirst("Accept");
+        String query = ex.getRequestURI().getRawQuery();
+        boolean stream = (accept != null && accept.contains("ndjson")) || (query != null && query.contains("stream=1"));
+        if (stream) {
+            ex.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+            ex.sendResponseHeaders(200, 0);
+            OutputStream os = ex.getResponseBody();
+            double[] ys = new double[Math.min(STREAM_CHUNK, xs.length)];
+            double[] chunk = new double[ys.length];
+            StringBuilder sb = new StringBuilder(STREAM_CHUNK * 48);
+            for (int off = 0; off < xs.length; off += STREAM_CHUNK) {
+                int n = Math.min(STREAM_CHUNK, xs.length - off);
+                System.arraycopy(xs, off, chunk, 0, n);
+                if (adapter.inferBatch(m.weights, chunk, ys, n) != n) throw new IllegalStateException("inference failed");
+                sb.setLength(0);
+                for (int i=0;i<n;i++) sb.append("{\"i\":").append(off + i).append(",\"y\":").append(ys[i]).append("}\n");
+                os.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+                os.flush();
+            }
+            os.close();
+        } else {
+            double[] ys = new double[xs.length];
+            if (jobs.inferRustBatch(m.weights, xs, xs.length, ys, adapter) != xs.length) throw new IllegalStateException("inference failed");
+            StringBuilder sb = new StringBuilder(64 + xs.length * 20);
+            sb.append("{\"ok\":true,\"version\":").append(m.version).append(",\"ys\":[");
+            for (int i=0;i<ys.length;i++) {
+                if (i>0) sb.append(',');
+                sb.append(ys[i]);
+            }
+            sb.append("]}");
+            send(ex, 200, sb.toString());
+        }
+        batchLatency.record(System.nanoTime() - start);
+    }
+
+    private String statsJson() {
+        ModelRegistry.Model m = registry.current();
+        return "{\"model\":" + (m != null ? m.toJson() : "null") + ",\"virtual_threads\":" + virtualThreads + ",\"adapter\":\"" + adapter.mode() + "\",\"predict\":" + predictLatency.toJson() + ",\"batch\":" + batchLatency.toJson() + ",\"errors\":" + errors.sum() + ",\"scheduler\":{\"batches\":" + scheduler.batches() + ",\"requests\":" + scheduler.requests() + "},\"cache\":" + cache.toJson() + "}";
+    }
+
+    private static String readBody(HttpExchange ex) throws IOException {
+        return new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange ex, int status, String json) throws IOException {
+        byte[] out = json.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(status, out.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(out);
+        }
+    }
+
+    static double bodyDouble(String body, String key) {
+        if (!body.contains("\"" + key + "\"")) throw new IllegalArgumentException("missing " + key);
+        try {
+            return Double.parseDouble(number(body, body.indexOf(':', body.indexOf("\"" + key + "\"")) + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid " + key);
+        }
+    }
+
+    static double queryDouble(String query, String key) {
+        if (query != null) {
+            for (String part : query.split("&")) {
+                if (part.startsWith(key + "=")) {
+                    try {
+                        return Double.parseDouble(part.substring(key.length() + 1));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("invalid " + key);
+                    }
+                }
+            }
+        }
+        throw new IllegalArgumentException("missing " + key);
+    }
+
+    private static String number(String s, int j) {
+        while (j < s.length() && s.charAt(j) == ' ') j++;
+        int start = j;
+        while (j < s.length()) {
+            char c = s.charAt(j);
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') j++;
+            else break;
+        }
+        return s.substring(start, j);
+    }
+
+    static double[] parseArray(String s, String key) {
+        int i = s.indexOf("\"" + key + "\"");
+        int start = i < 0 ? -1 : s.indexOf('[', i);
+        int end = start < 0 ? -1 : s.indexOf(']', start);
+        if (end < 0) throw new IllegalArgumentException("missing " + key);
+        double[] out = new double[16];
+        int n = 0;
+        int j = start + 1;
+        while (j < end) {
+            int k = s.indexOf(',', j);
+            if (k < 0 || k > end) k = end;
+            String part = s.substring(j, k).trim();
+            if (!part.isEmpty()) {
+                if (n == out.length) out = Arrays.copyOf(out, n * 2);
+                try {
+                    out[n++] = Double.parseDouble(part);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("invalid " + key);
+                }
+            }
+            j = k + 1;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int port() { return server.getAddress().getPort(); }
+    public boolean virtualThreads() { return virtualThreads; }
+
+    public void close() {
+        server.stop(0);
+        scheduler.close();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -3,17 +3,145 @@ package ia;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class JobManager {
+    static final int MAX_QUEUED_JOBS = 4096;
+
     public static class Weights {
         public final double w;
         public final double b;
         public Weights(double w, double b){ this.w=w; this.b=b; }
     }
 
+    public static final class Params {
+        public final int epochs;
+        public final int batchSize;
+        public final double learningRate;
+
+        public Params(int epochs, int batchSize, double learningRate) {
+            if (epochs <= 0 || batchSize <= 0 || !(learningRate > 0)) throw new IllegalArgumentException("invalid hyperparameters");
+            this.epochs = epochs;
+            this.batchSize = batchSize;
+            this.learningRate = learningRate;
+        }
+
+        public String toJson() {
+            return "{\"epochs\":" + epochs + ",\"batch_size\":" + batchSize + ",\"lr\":" + learningRate + "}";
+        }
+    }
+
+    public static final class Result {
+        public final Params params;
+        public final Weights weights;
+        public final double loss;
+        public final long millis;
+
+        Result(Params params, Weights weights, double loss, long millis) {
+            this.params = params;
+            this.weights = weights;
+            this.loss = loss;
+            this.millis = millis;
+        }
+
+        public String toJson() {
+            return "{\"params\":" + params.toJson() + ",\"w\":" + weights.w + ",\"b\":" + weights.b + ",\"loss\":" + loss + ",\"ms\":" + millis + "}";
+        }
+    }
+
+    public static final class Job implements StreamingTrainer.Progress {
+        public final long id;
+        public final Params params;
+        public final CompletableFuture<Result> result = new CompletableFuture<>();
+        private volatile double progress = 0.0;
+        private volatile double loss = Double.NaN;
+        private volatile boolean started = false;
+
+        Job(long id, Params params) {
+            this.id = id;
+            this.params = params;
+        }
+
+        public boolean report(double fraction, double loss) {
+            this.progress = fraction;
+            this.loss = loss;
+            return !result.isDone();
+        }
+
+        public double progress() { return progress; }
+        public double loss() { return loss; }
+        public boolean cancel() { return result.cancel(false); }
+
+        public String state() {
+            if (result.isCancelled()) return "cancelled";
+            if (result.isCompletedExceptionally()) return "failed";
+            if (result.isDone()) return "done";
+            return started ? "running" : "queued";
+        }
+
+        public String toJson() {
+            return "{\"id\":" + id + ",\"state\":\"" + state() + "\",\"progress\":" + progress + ",\"loss\":" + loss + ",\"params\":" + params.toJson() + "}";
+        }
+    }
+
+    public static final class Sweep {
+        public final List<Job> jobs;
+        public final CompletableFuture<Result> best;
+
+        Sweep(List<Job> jobs) {
+            this.jobs = jobs;
+            CompletableFuture<?>[] all = new CompletableFuture<?>[jobs.size()];
+            for (int i=0;i<all.length;i++) all[i] = jobs.get(i).result.handle((r, e) -> r);
+            this.best = CompletableFuture.allOf(all).thenApply(v -> {
+                Result best = null;
+                for (Job j : jobs) {
+                    Result r = j.result.isCompletedExceptionally() ? null : j.result.join();
+                    if (r != null && !Double.isNaN(r.loss) && (best == null || r.loss < best.loss)) best = r;
+                }
+                if (best == null) throw new IllegalStateException("no sweep job succeeded");
+                return best;
+            });
+        }
+
+        public void cancel() {
+            for (Job j : jobs) j.cancel();
+        }
+
+        public double progress() {
+            double p = 0.0;
+            for (Job j : jobs) p += j.result.isDone() ? 1.0 : j.progress();
+            return jobs.isEmpty() ? 1.0 : p / jobs.size();
+        }
+    }
+
+    private final Path trainData;
+    private final AtomicLong jobIds = new AtomicLong();
+    private ThreadPoolExecutor workers;
+
+    public JobManager() {
+        String env = System.getenv("IA_TRAIN_DATA");
+        this.trainData = env != null && !env.isBlank() ? Path.of(env) : null;
+    }
+
+    public JobManager(Path trainData) {
+        this.trainData = trainData;
+    }
+
+    public Weights trainFile(Path file) {
+        return new StreamingTrainer(file).fit();
+    }
+
     public Weights train() {
+        if (trainData != null && Files.exists(trainData)) return trainFile(trainData);
         try {
             String script = Path.of("python-train","train.py").toString();
             ProcessBuilder pb = new ProcessBuilder("python", script);
@@ -52,6 +180,68 @@ public class JobManager {
         }
     }
 
+    private synchronized ThreadPoolExecutor workers() {
+        if (workers == null) {
+            int n = Runtime.getRuntime().availableProcessors();
+            AtomicLong threads = new AtomicLong();
+            workers = new ThreadPoolExecutor(n, n, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(MAX_QUEUED_JOBS), r -> {
+                Thread t = new Thread(r, "ia-train-" + threads.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return workers;
+    }
+
+    public Job submit(Params params, long timeoutMillis) {
+        if (trainData == null || !Files.exists(trainData)) throw new IllegalStateException("no training data file");
+        return submit(trainData, params, timeoutMillis);
+    }
+
+    public Job submit(Path file, Params params, long timeoutMillis) {
+        Job job = new Job(jobIds.incrementAndGet(), params);
+        if (timeoutMillis > 0) job.result.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        workers().execute(() -> {
+            if (job.result.isDone()) return;
+            job.started = true;
+            long start = System.nanoTime();
+            try {
+                StreamingTrainer t = new StreamingTrainer(file);
+                Weights w = t.sgd(params.epochs, params.batchSize, params.learningRate, job);
+                job.progress = 1.0;
+                job.result.complete(new Result(params, w, t.lastLoss(), (System.nanoTime() - start) / 1_000_000L));
+            } catch (Throwable e) {
+                job.result.completeExceptionally(e);
+            }
+        });
+        return job;
+    }
+
+    public Sweep sweep(int[] epochs, int[] batchSizes, double[] learningRates, long timeoutMillis) {
+        if (trainData == null || !Files.exists(trainData)) throw new IllegalStateException("no training data file");
+        return sweep(trainData, epochs, batchSizes, learningRates, timeoutMillis);
+    }
+
+    public Sweep sweep(Path file, int[] epochs, int[] batchSizes, double[] learningRates, long timeoutMillis) {
+        List<Job> jobs = new ArrayList<>();
+        try {
+            for (int e : epochs) {
+                for (int b : batchSizes) {
+                    for (double lr : learningRates) jobs.add(submit(file, new Params(e, b, lr), timeoutMillis));
+                }
+            }
+        } catch (RuntimeException e) {
+            for (Job j : jobs) j.cancel();
+            throw e;
+        }
+        return new Sweep(jobs);
+    }
+
+    public synchronized void shutdown() {
+        if (workers != null) workers.shutdownNow();
+        workers = null;
+    }
+
     public double inferJava(Weights w, double x) {
         return w.w * x + w.b;
     }
@@ -62,6 +252,41 @@ public class JobManager {
         return extractDouble(out, "y");
     }
 
+    public double inferCached(ModelRegistry.Model model, double x, IARustAdapter adapter, InferenceCache cache) {
+        double y = cache.get(model.version, x, Double.NaN);
+        if (!Double.isNaN(y)) return y;
+        y = inferRust(model.weights, x, adapter);
+        cache.put(model.version, x, y);
+        return y;
+    }
+
+    public int inferRustBatch(Weights w, double[] xs, int n, double[] out, IARustAdapter adapter) {
+        return adapter.inferBatch(w, xs, out, n);
+    }
+
+    public int inferDense(DenseModel model, double[] xs, int rows, double[] out) {
+        model.predictBatch(xs, rows, out);
+        return rows;
+    }
+
+    static int extractDoubles(String s, String key, double[] out) {
+        int i = s.indexOf("\"" + key + "\"");
+        if (i < 0) return -1;
+        int start = s.indexOf('[', i);
+        int end = s.indexOf(']', start);
+        if (start < 0 || end < 0) return -1;
+        int n = 0;
+        int j = start + 1;
+        while (j < end && n < out.length) {
+            int k = s.indexOf(',', j);
+            if (k < 0 || k > end) k = end;
+            String part = s.substring(j, k).trim();
+            if (!part.isEmpty()) out[n++] = Double.parseDouble(part);
+            j = k + 1;
+        }
+        return n;
+    }
+
     static double extractDouble(String s, String key){
         String k = "\"" + key + "\"";
         int i = s.indexOf(k);
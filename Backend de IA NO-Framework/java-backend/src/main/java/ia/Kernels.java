@@ -0,0 +1,187 @@
+package ia;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+final class Kernels {
+    static final int ROW_BLOCK = 64;
+    static final int COL_BLOCK = 64;
+    static final int K_BLOCK = 256;
+    static final long PARALLEL_FLOPS = 1L << 18;
+
+    private Kernels() {}
+
+    static void affine(double w, double b, double[] xs, int from, double[] out, int to, int n) {
+        int i = 0;
+        int end = n & ~3;
+        for (; i < end; i += 4) {
+            out[to + i] = w * xs[from + i] + b;
+            out[to + i + 1] = w * xs[from + i + 1] + b;
+            out[to + i + 2] = w * xs[from + i + 2] + b;
+            out[to + i + 3] = w * xs[from + i + 3] + b;
+        }
+        for (; i < n; i++) out[to + i] = w * xs[from + i] + b;
+    }
+
+    static double dot(double[] a, int ai, double[] b, int bi, int n) {
+        double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+        int i = 0;
+        int end = n & ~3;
+        for (; i < end; i += 4) {
+            s0 += a[ai + i] * b[bi + i];
+            s1 += a[ai + i + 1] * b[bi + i + 1];
+            s2 += a[ai + i + 2] * b[bi + i + 2];
+            s3 += a[ai + i + 3] * b[bi + i + 3];
+        }
+        for (; i < n; i++) s0 += a[ai + i] * b[bi + i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static double dot(DoubleBuffer a, int ai, double[] b, int bi, int n) {
+        double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+        int i = 0;
+        int end = n & ~3;
+        for (; i < end; i += 4) {
+            s0 += a.get(ai + i) * b[bi + i];
+            s1 += a.get(ai + i + 1) * b[bi + i + 1];
+            s2 += a.get(ai + i + 2) * b[bi + i + 2];
+            s3 += a.get(ai + i + 3) * b[bi + i + 3];
+        }
+        for (; i < n; i++) s0 += a.get(ai + i) * b[bi + i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static double dot(FloatBuffer a, int ai, double[] b, int bi, int n) {
+        double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+        int i = 0;
+        int end = n & ~3;
+        for (; i < end; i += 4) {
+            s0 += a.get(ai + i) * b[bi + i];
+            s1 += a.get(ai + i + 1) * b[bi + i + 1];
+            s2 += a.get(ai + i + 2) * b[bi + i + 2];
+            s3 += a.get(ai + i + 3) * b[bi + i + 3];
+        }
+        for (; i < n; i++) s0 += a.get(ai + i) * b[bi + i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static void axpy(double alpha, double[] x, int xi, double[] y, int yi, int n) {
+        int i = 0;
+        int end = n & ~3;
+        for (; i < end; i += 4) {
+            y[yi + i] += alpha * x[xi + i];
+            y[yi + i + 1] += alpha * x[xi + i + 1];
+            y[yi + i + 2] += alpha * x[xi + i + 2];
+            y[yi + i + 3] += alpha * x[xi + i + 3];
+        }
+        for (; i < n; i++) y[yi + i] += alpha * x[xi + i];
+    }
+
+    static void gemv(double[] w, int rows, int cols, double[] x, int xi, double[] bias, double[] y, int yi) {
+        for (int r = 0; r < rows; r++) {
+            y[yi + r] = dot(w, r * cols, x, xi, cols) + (bias != null ? bias[r] : 0.0);
+        }
+    }
+
+    interface RowRange {
+        void run(int from, int to);
+    }
+
+    static final class RowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final RowRange body;
+        private final int from, to, grain;
+
+        RowTask(RowRange body, int from, int to, int grain) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        protected void compute() {
+            if (to - from <= grain) {
+                body.run(from, to);
+                return;
+            }
+            int mid = from + ((to - from) / 2 + ROW_BLOCK - 1) / ROW_BLOCK * ROW_BLOCK;
+            if (mid >= to) mid = (from + to) >>> 1;
+            invokeAll(new RowTask(body, from, mid, grain), new RowTask(body, mid, to, grain));
+        }
+    }
+
+    static void parallelRows(int rows, long flopsPerRow, RowRange body) {
+        int workers = ForkJoinPool.getCommonPoolParallelism();
+        if (workers <= 1 || rows <= ROW_BLOCK || rows * flopsPerRow < PARALLEL_FLOPS) {
+            body.run(0, rows);
+            return;
+        }
+        int grain = Math.max(ROW_BLOCK, rows / (workers * 4));
+        ForkJoinPool.commonPool().invoke(new RowTask(body, 0, rows, grain));
+    }
+
+    static void gemmNT(double[] x, int n, int k, double[] w, int m, double[] bias, double[] y) {
+        parallelRows(n, (long) k * m, (from, to) -> gemmNT(x, k, w, m, bias, y, from, to));
+    }
+
+    private static void gemmNT(double[] x, int k, double[] w, int m, double[] bias, double[] y, int from, int to) {
+        for (int r = from; r < to; r++) {
+            int yo = r * m;
+            if (bias != null) System.arraycopy(bias, 0, y, yo, m);
+            else Arrays.fill(y, yo, yo + m, 0.0);
+        }
+        for (int r0 = from; r0 < to; r0 += ROW_BLOCK) {
+            int r1 = Math.min(to, r0 + ROW_BLOCK);
+            for (int c0 = 0; c0 < m; c0 += COL_BLOCK) {
+                int c1 = Math.min(m, c0 + COL_BLOCK);
+                for (int k0 = 0; k0 < k; k0 += K_BLOCK) {
+                    int kn = Math.min(K_BLOCK, k - k0);
+                    for (int r = r0; r < r1; r++) {
+                        int xo = r * k + k0;
+                        int yo = r * m;
+                        for (int c = c0; c < c1; c++) y[yo + c] += dot(x, xo, w, c * k + k0, kn);
+                    }
+                }
+            }
+        }
+    }
+
+    static void gemmNN(double[] g, int n, int m, double[] w, int k, double[] out) {
+        parallelRows(n, (long) k * m, (from, to) -> {
+            Arrays.fill(out, from * k, to * k, 0.0);
+            for (int k0 = 0; k0 < k; k0 += K_BLOCK) {
+                int kn = Math.min(K_BLOCK, k - k0);
+                for (int r = from; r < to; r++) {
+                    int go = r * m;
+                    int oo = r * k + k0;
+                    for (int c = 0; c < m; c++) {
+                        double a = g[go + c];
+                        if (a != 0.0) axpy(a, w, c * k + k0, out, oo, kn);
+                    }
+                }
+            }
+        });
+    }
+
+    static void gemmTN(double[] g, int n, int m, double[] x, int k, double[] out) {
+        parallelRows(m, (long) n * k, (from, to) -> {
+            Arrays.fill(out, from * k, to * k, 0.0);
+            for (int r0 = 0; r0 < n; r0 += ROW_BLOCK) {
+                int r1 = Math.min(n, r0 + ROW_BLOCK);
+                for (int k0 = 0; k0 < k; k0 += K_BLOCK) {
+                    int kn = Math.min(K_BLOCK, k - k0);
+                    for (int c = from; c < to; c++) {
+                        int oo = c * k + k0;
+                        for (int r = r0; r < r1; r++) {
+                            double a = g[r * m + c];
+                            if (a != 0.0) axpy(a, x, r * k + k0, out, oo, kn);
+                        }
+                    }
+                }
+            }
+        });
+    }
+}
@@ -1,15 +1,56 @@
 package ia;
 
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
 public class Main {
     public static void main(String[] args) throws Exception {
+        long start = System.nanoTime();
         JobManager jm = new JobManager();
-        JobManager.Weights w = jm.train();
+        ModelRegistry registry = new ModelRegistry(Path.of("models"));
+        ModelRegistry.Model model = registry.load();
+        if (model == null) model = registry.publish(jm.train());
+        double coldStartMs = (System.nanoTime() - start) / 1_000_000.0;
+        if (args.length > 0 && args[0].equals("serve")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : 9096;
+            if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+            InferenceServer server = new InferenceServer(registry, jm, new IARustAdapter(), port);
+            server.start();
+            System.out.println("{\"serving\":" + server.port() + ",\"virtual_threads\":" + server.virtualThreads() + ",\"model\":" + model.toJson() + ",\"cold_start_ms\":" + coldStartMs + "}");
+            Thread.currentThread().join();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("sweep")) {
+            JobManager.Sweep sweep = jm.sweep(new int[] { 5, 20 }, new int[] { 64, 1024 }, new double[] { 0.01, 0.1, 0.3 }, 10 * 60_000L);
+            JobManager.Result best = sweep.best.get();
+            ModelRegistry.Model published = registry.publish(best.weights);
+            System.out.println("{\"jobs\":" + sweep.jobs.size() + ",\"best\":" + best.toJson() + ",\"model\":" + published.toJson() + "}");
+            jm.shutdown();
+            registry.close();
+            return;
+        }
+        boolean retrain = args.length > 0 && args[0].equals("retrain");
+        CompletableFuture<ModelRegistry.Model> next = retrain ? registry.trainAsync(jm) : null;
+        JobManager.Weights w = registry.weights();
         IARustAdapter adapter = new IARustAdapter();
         double x = 7.5;
         double yJava = jm.inferJava(w, x);
         double yRust = jm.inferRust(w, x, adapter);
-        System.out.println("{\"weights\":{\"w\":" + w.w + ",\"b\":" + w.b + "},\"x\":" + x + ",\"y_java\":" + yJava + ",\"y_rust\":" + yRust + "}");
+        InferenceScheduler scheduler = new InferenceScheduler(jm, adapter);
+        double yBatched = scheduler.submit(w, x).get();
+        scheduler.close();
+        InferenceCache cache = new InferenceCache(1 << 16);
+        jm.inferCached(registry.current(), x, adapter, cache);
+        double yCached = jm.inferCached(registry.current(), x, adapter, cache);
+        DenseModel dense = DenseModel.of(w);
+        double yDense = dense.predict(new double[] { x });
+        long mapStart = System.nanoTime();
+        ModelFile mapped = registry.mapped(registry.current());
+        double mapMs = (System.nanoTime() - mapStart) / 1_000_000.0;
+        double yMapped = mapped.predict(new double[] { x });
+        String swapped = next != null ? ",\"swapped_to\":" + next.get().version : "";
+        System.out.println("{\"model\":" + model.toJson() + ",\"cold_start_ms\":" + coldStartMs + swapped + ",\"weights\":{\"w\":" + w.w + ",\"b\":" + w.b + "},\"x\":" + x + ",\"y_java\":" + yJava + ",\"y_rust\":" + yRust + ",\"y_batched\":" + yBatched + ",\"y_cached\":" + yCached + ",\"y_dense\":" + yDense + ",\"y_mapped\":" + yMapped + ",\"map_ms\":" + mapMs + ",\"cache\":" + cache.toJson() + "}");
+        registry.close();
         adapter.shutdown();
     }
 }
-
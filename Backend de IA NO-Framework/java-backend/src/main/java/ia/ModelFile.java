@@ -0,0 +1,217 @@
+package ia;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+public final class ModelFile {
+    static final int MAGIC = 0x464D4149;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int LAYER_ENTRY_SIZE = 32;
+    static final int ALIGN = 64;
+
+    public static final class Layer {
+        public final int in, out;
+        public final DenseModel.Activation activation;
+        final DoubleBuffer w64, b64;
+        final FloatBuffer w32, b32;
+
+        Layer(int in, int out, DenseModel.Activation activation, DoubleBuffer w64, DoubleBuffer b64, FloatBuffer w32, FloatBuffer b32) {
+            this.in = in;
+            this.out = out;
+            this.activation = activation;
+            this.w64 = w64;
+            this.b64 = b64;
+            this.w32 = w32;
+            this.b32 = b32;
+        }
+
+        double bias(int i) { return b64 != null ? b64.get(i) : b32.get(i); }
+        double weight(int i) { return w64 != null ? w64.get(i) : w32.get(i); }
+    }
+
+    private final Path path;
+    private final MappedByteBuffer map;
+    private final int elementSize;
+    private final long modelVersion;
+    private final long checksum;
+    private final Layer[] layers;
+
+    private ModelFile(Path path, MappedByteBuffer map, int elementSize, long modelVersion, long checksum, Layer[] layers) {
+        this.path = path;
+        this.map = map;
+        this.elementSize = elementSize;
+        this.modelVersion = modelVersion;
+        this.checksum = checksum;
+        this.layers = layers;
+    }
+
+    static long align(long n) {
+        return (n + ALIGN - 1) & -ALIGN;
+    }
+
+    public static void write(Path target, DenseModel model, boolean singlePrecision, long modelVersion) {
+        int elem = singlePrecision ? Float.BYTES : Double.BYTES;
+        int depth = model.depth();
+        long[] woff = new long[depth], boff = new long[depth];
+        long size = align(HEADER_SIZE + (long) depth * LAYER_ENTRY_SIZE);
+        for (int i=0;i<depth;i++) {
+            DenseModel.Layer l = model.layer(i);
+            woff[i] = size;
+            size = align(size + (long) l.w.length * elem);
+            boff[i] = size;
+            size = align(size + (long) l.b.length * elem);
+        }
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("model too large for a single mapping");
+        ByteBuffer buf = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i=0;i<depth;i++) {
+            DenseModel.Layer l = model.layer(i);
+            int p = HEADER_SIZE + i * LAYER_ENTRY_SIZE;
+            buf.putInt(p, l.in).putInt(p + 4, l.out).putInt(p + 8, l.activation.ordinal());
+            buf.putLong(p + 16, woff[i]).putLong(p + 24, boff[i]);
+            put(buf, (int) woff[i], l.w, singlePrecision);
+            put(buf, (int) boff[i], l.b, singlePrecision);
+        }
+        buf.putInt(0, MAGIC).putShort(4, (short) FORMAT_VERSION).put(6, (byte) elem);
+        buf.putInt(8, depth).putLong(16, modelVersion).putLong(24, size);
+        buf.putLong(32, fnv1a(buf, HEADER_SIZE, (int) size));
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buf.hasRemaining()) ch.write(buf);
+            ch.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void put(ByteBuffer buf, int off, double[] v, boolean single) {
+        if (single) {
+            for (int i=0;i<v.length;i++) buf.putFloat(off + i * Float.BYTES, (float) v[i]);
+        } else {
+            for (int i=0;i<v.length;i++) buf.putDouble(off + i * Double.BYTES, v[i]);
+        }
+    }
+
+    public static ModelFile open(Path path) {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) throw new IllegalArgumentException("not a model file: " + path);
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (map.getInt(0) != MAGIC) throw new IllegalArgumentException("bad magic: " + path);
+            if (map.getShort(4) != FORMAT_VERSION) throw new IllegalArgumentException("unsupported format version " + map.getShort(4));
+            int elem = map.get(6);
+            if (elem != Float.BYTES && elem != Double.BYTES) throw new IllegalArgumentException("bad element size " + elem);
+            int depth = map.getInt(8);
+            if (map.getLong(24) != size || depth <= 0 || HEADER_SIZE + (long) depth * LAYER_ENTRY_SIZE > size) {
+                throw new IllegalArgumentException("truncated model file: " + path);
+            }
+            DenseModel.Activation[] acts = DenseModel.Activation.values();
+            Layer[] layers = new Layer[depth];
+            for (int i=0;i<depth;i++) {
+                int p = HEADER_SIZE + i * LAYER_ENTRY_SIZE;
+                int in = map.getInt(p), out = map.getInt(p + 4), act = map.getInt(p + 8);
+                long wo = map.getLong(p + 16), bo = map.getLong(p + 24);
+                long wn = (long) in * out * elem, bn = (long) out * elem;
+                if (in <= 0 || out <= 0 || act < 0 || act >= acts.length || wo % ALIGN != 0 || bo % ALIGN != 0 || wo + wn > size || bo + bn > size) {
+                    throw new IllegalArgumentException("bad layer " + i + " in " + path);
+                }
+                if (i > 0 && layers[i-1].out != in) throw new IllegalArgumentException("layer " + i + " shape mismatch in " + path);
+                ByteBuffer w = map.slice((int) wo, (int) wn).order(ByteOrder.LITTLE_ENDIAN);
+                ByteBuffer b = map.slice((int) bo, (int) bn).order(ByteOrder.LITTLE_ENDIAN);
+                layers[i] = elem == Double.BYTES
+                        ? new Layer(in, out, acts[act], w.asDoubleBuffer(), b.asDoubleBuffer(), null, null)
+                        : new Layer(in, out, acts[act], null, null, w.asFloatBuffer(), b.asFloatBuffer());
+            }
+            return new ModelFile(path, map, elem, map.getLong(16), map.getLong(32), layers);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static long fnv1a(ByteBuffer buf, int from, int to) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = from; i < to; i++) {
+            h ^= buf.get(i) & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    public boolean verify() {
+        return fnv1a(map, HEADER_SIZE, map.limit()) == checksum;
+    }
+
+    public void predict(double[] x, double[] out) {
+        if (x.length < inputs() || out.length < outputs()) throw new IllegalArgumentException("bad vector size");
+        predict(x, 0, out, 0);
+    }
+
+    public double predict(double[] x) {
+        double[] out = new double[outputs()];
+        predict(x, out);
+        return out[0];
+    }
+
+    public void predictBatch(double[] xs, int rows, double[] out) {
+        if (xs.length < rows * inputs() || out.length < rows * outputs()) throw new IllegalArgumentException("bad batch size");
+        for (int r=0;r<rows;r++) predict(xs, r * inputs(), out, r * outputs());
+    }
+
+    private void predict(double[] x, int xi, double[] out, int oi) {
+        double[] cur = x;
+        int ci = xi;
+        for (int i=0;i<layers.length;i++) {
+            Layer l = layers[i];
+            boolean last = i == layers.length - 1;
+            double[] next = last ? out : new double[l.out];
+            int ni = last ? oi : 0;
+            for (int o=0;o<l.out;o++) {
+                double y = l.w64 != null ? Kernels.dot(l.w64, o * l.in, cur, ci, l.in) : Kernels.dot(l.w32, o * l.in, cur, ci, l.in);
+                y += l.bias(o);
+                if (l.activation == DenseModel.Activation.RELU && y < 0.0) y = 0.0;
+                else if (l.activation == DenseModel.Activation.TANH) y = Math.tanh(y);
+                next[ni + o] = y;
+            }
+            cur = next;
+            ci = ni;
+        }
+    }
+
+    public DenseModel toDenseModel() {
+        DenseModel.Layer[] out = new DenseModel.Layer[layers.length];
+        for (int i=0;i<layers.length;i++) {
+            Layer l = layers[i];
+            double[] w = new double[l.in * l.out];
+            double[] b = new double[l.out];
+            for (int j=0;j<w.length;j++) w[j] = l.weight(j);
+            for (int j=0;j<b.length;j++) b[j] = l.bias(j);
+            out[i] = new DenseModel.Layer(l.in, l.out, w, b, l.activation);
+        }
+        return new DenseModel(out);
+    }
+
+    public Path path() { return path; }
+    public int inputs() { return layers[0].in; }
+    public int outputs() { return layers[layers.length - 1].out; }
+    public int depth() { return layers.length; }
+    public Layer layer(int i) { return layers[i]; }
+    public boolean singlePrecision() { return elementSize == Float.BYTES; }
+    public long modelVersion() { return modelVersion; }
+    public long sizeBytes() { return map.limit(); }
+}
@@ -0,0 +1,189 @@
+package ia;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+public class ModelRegistry implements AutoCloseable {
+    public static final class Model {
+        public final long version;
+        public final String hash;
+        public final JobManager.Weights weights;
+        public final long createdMillis;
+
+        Model(long version, String hash, JobManager.Weights weights, long createdMillis) {
+            this.version = version;
+            this.hash = hash;
+            this.weights = weights;
+            this.createdMillis = createdMillis;
+        }
+
+        public String toJson() {
+            return "{\"version\":" + version + ",\"hash\":\"" + hash + "\",\"w\":" + weights.w + ",\"b\":" + weights.b + ",\"created\":" + createdMillis + "}";
+        }
+    }
+
+    private final Path dir;
+    private final AtomicReference<Model> current = new AtomicReference<>();
+    private final ExecutorService trainer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "ia-model-trainer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ModelRegistry(Path dir) {
+        this.dir = dir;
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Path modelPath(Path dir, long version) {
+        return dir.resolve(String.format("model-%08d.json", version));
+    }
+
+    static Path binaryPath(Path dir, long version) {
+        return dir.resolve(String.format("model-%08d.iamf", version));
+    }
+
+    public Path binaryPath(long version) {
+        return binaryPath(dir, version);
+    }
+
+    public ModelFile mapped(Model m) {
+        Path p = binaryPath(dir, m.version);
+        if (!Files.exists(p)) ModelFile.write(p, DenseModel.of(m.weights), false, m.version);
+        return ModelFile.open(p);
+    }
+
+    public Model load() {
+        Model m = read(dir.resolve("CURRENT"));
+        if (m == null) {
+            List<Long> versions = versions();
+            for (int i = versions.size() - 1; i >= 0 && m == null; i--) m = read(modelPath(dir, versions.get(i)));
+        }
+        if (m != null) swap(m);
+        return m;
+    }
+
+    public Model publish(JobManager.Weights weights) {
+        synchronized (this) {
+            List<Long> versions = versions();
+            long version = versions.isEmpty() ? 1 : versions.get(versions.size() - 1) + 1;
+            Model m = new Model(version, hash(weights), weights, System.currentTimeMillis());
+            Path target = modelPath(dir, version);
+            ModelFile.write(binaryPath(dir, version), DenseModel.of(weights), false, version);
+            write(target, m.toJson());
+            write(dir.resolve("CURRENT"), m.toJson());
+            swap(m);
+            return m;
+        }
+    }
+
+    public CompletableFuture<Model> trainAsync(JobManager jobs) {
+        return CompletableFuture.supplyAsync(() -> {
+            JobManager.Weights w = jobs.train();
+            if (Double.isNaN(w.w) || Double.isNaN(w.b) || (w.w == 0.0 && w.b == 0.0)) {
+                throw new IllegalStateException("training produced no usable weights");
+            }
+            return publish(w);
+        }, trainer);
+    }
+
+    private void swap(Model m) {
+        Model prev;
+        do {
+            prev = current.get();
+            if (prev != null && prev.version > m.version) return;
+        } while (!current.compareAndSet(prev, m));
+    }
+
+    public Model current() { return current.get(); }
+
+    public JobManager.Weights weights() {
+        Model m = current.get();
+        return m != null ? m.weights : null;
+    }
+
+    public Path dir() { return dir; }
+
+    public void close() {
+        trainer.shutdownNow();
+    }
+
+    private List<Long> versions() {
+        List<Long> out = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(p -> {
+                String name = p.getFileName().toString();
+                if (name.startsWith("model-") && name.endsWith(".json")) {
+                    try {
+                        out.add(Long.parseLong(name.substring(6, name.length() - 5)));
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        out.sort(null);
+        return out;
+    }
+
+    private static Model read(Path p) {
+        if (!Files.exists(p)) return null;
+        try {
+            String s = Files.readString(p, StandardCharsets.UTF_8);
+            long version = (long) JobManager.extractDouble(s, "version");
+            long created = (long) JobManager.extractDouble(s, "created");
+            JobManager.Weights w = new JobManager.Weights(JobManager.extractDouble(s, "w"), JobManager.extractDouble(s, "b"));
+            int h = s.indexOf("\"hash\":\"");
+            if (h < 0) return null;
+            String hash = s.substring(h + 8, s.indexOf('"', h + 8));
+            if (!hash.equals(hash(w))) return null;
+            return new Model(version, hash, w, created);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void write(Path target, String json) {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            Files.writeString(tmp, json + "\n", StandardCharsets.UTF_8);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String hash(JobManager.Weights w) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buf = ByteBuffer.allocate(16);
+            buf.putLong(Double.doubleToLongBits(w.w));
+            buf.putLong(Double.doubleToLongBits(w.b));
+            byte[] d = md.digest(buf.array());
+            StringBuilder sb = new StringBuilder(d.length * 2);
+            for (byte x : d) sb.append(Character.forDigit((x >> 4) & 0xf, 16)).append(Character.forDigit(x & 0xf, 16));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
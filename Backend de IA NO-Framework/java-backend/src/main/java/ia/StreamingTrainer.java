@@ -0,0 +1,242 @@
+package ia;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class StreamingTrainer {
+    public enum Format { CSV, BINARY }
+
+    static final int RECORD_SIZE = 16;
+
+    public static final class Stats {
+        public long n;
+        public double meanX, meanY;
+        public double m2x, m2y, cxy;
+        long skipped;
+
+        void add(double x, double y) {
+            n++;
+            double dx = x - meanX;
+            meanX += dx / n;
+            double dy = y - meanY;
+            meanY += dy / n;
+            m2x += dx * (x - meanX);
+            m2y += dy * (y - meanY);
+            cxy += dx * (y - meanY);
+        }
+
+        void merge(Stats o) {
+            skipped += o.skipped;
+            if (o.n == 0) return;
+            if (n == 0) {
+                n = o.n; meanX = o.meanX; meanY = o.meanY; m2x = o.m2x; m2y = o.m2y; cxy = o.cxy;
+                return;
+            }
+            long total = n + o.n;
+            double dx = o.meanX - meanX;
+            double dy = o.meanY - meanY;
+            double f = (double) n * o.n / total;
+            m2x += o.m2x + dx * dx * f;
+            m2y += o.m2y + dy * dy * f;
+            cxy += o.cxy + dx * dy * f;
+            meanX += dx * o.n / total;
+            meanY += dy * o.n / total;
+            n = total;
+        }
+
+        public double varianceX() { return n > 1 ? m2x / (n - 1) : 0.0; }
+        public double varianceY() { return n > 1 ? m2y / (n - 1) : 0.0; }
+
+        public JobManager.Weights fit() {
+            double w = m2x != 0.0 ? cxy / m2x : 0.0;
+            return new JobManager.Weights(w, meanY - w * meanX);
+        }
+
+        public double r2() {
+            return m2x != 0.0 && m2y != 0.0 ? cxy * cxy / (m2x * m2y) : 0.0;
+        }
+    }
+
+    interface RowSink {
+        void accept(double x, double y);
+    }
+
+    public interface Progress {
+        boolean report(double fraction, double loss);
+    }
+
+    private final Path file;
+    private final Format format;
+    private final int chunkBytes;
+    private final ForkJoinPool pool;
+    private long skipped = 0;
+    private double lastLoss = Double.NaN;
+
+    public StreamingTrainer(Path file) {
+        this(file, file.getFileName().toString().endsWith(".csv") ? Format.CSV : Format.BINARY, 16 << 20, ForkJoinPool.commonPool());
+    }
+
+    public StreamingTrainer(Path file, Format format, int chunkBytes, ForkJoinPool pool) {
+        this.file = file;
+        this.format = format;
+        int min = Math.max(4096, chunkBytes);
+        this.chunkBytes = format == Format.BINARY ? min - min % RECORD_SIZE : min;
+        this.pool = pool;
+    }
+
+    public Stats stats() {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<long[]> ranges = CsvChunks.split(ch, chunkBytes, format == Format.CSV);
+            Stats s = ranges.isEmpty() ? new Stats() : pool.invoke(new StatsTask(ch, ranges, 0, ranges.size()));
+            skipped = s.skipped;
+            return s;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public JobManager.Weights fit() {
+        return stats().fit();
+    }
+
+    public JobManager.Weights sgd(int epochs, int batchSize, double learningRate) {
+        return sgd(epochs, batchSize, learningRate, null);
+    }
+
+    public JobManager.Weights sgd(int epochs, int batchSize, double learningRate, Progress progress) {
+        Stats s = stats();
+        double sd = Math.sqrt(s.varianceX());
+        double scale = sd > 0 ? 1.0 / sd : 1.0;
+        double shift = s.meanX;
+        int batch = Math.max(1, batchSize);
+        double[] w = new double[2];
+        double[] grad = new double[3];
+        double[] loss = new double[2];
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<long[]> ranges = CsvChunks.split(ch, chunkBytes, format == Format.CSV);
+            for (int epoch = 0; epoch < epochs; epoch++) {
+                loss[0] = 0.0;
+                loss[1] = 0.0;
+                long[] rows = new long[1];
+                RowSink step = (x, y) -> {
+                    double z = (x - shift) * scale;
+                    double err = w[0] * z + w[1] - y;
+                    grad[0] += err * z;
+                    grad[1] += err;
+                    if (++grad[2] == batch) apply(w, grad, learningRate);
+                    kahan(loss, err * err);
+                    rows[0]++;
+                };
+                for (int ri = 0; ri < ranges.size(); ri++) {
+                    long[] r = ranges.get(ri);
+                    scan(ch, r[0], r[1], step);
+                    double fraction = (epoch * (double) ranges.size() + ri + 1) / ((double) epochs * ranges.size());
+                    if (progress != null && !progress.report(fraction, rows[0] > 0 ? loss[0] / rows[0] : Double.NaN)) {
+                        throw new CancellationException("training cancelled");
+                    }
+                }
+                if (grad[2] > 0) apply(w, grad, learningRate);
+                lastLoss = rows[0] > 0 ? loss[0] / rows[0] : Double.NaN;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new JobManager.Weights(w[0] * scale, w[1] - w[0] * scale * shift);
+    }
+
+    private static void apply(double[] w, double[] grad, double lr) {
+        double k = lr / grad[2];
+        w[0] -= k * grad[0];
+        w[1] -= k * grad[1];
+        grad[0] = grad[1] = grad[2] = 0.0;
+    }
+
+    private static void kahan(double[] acc, double v) {
+        double y = v - acc[1];
+        double t = acc[0] + y;
+        acc[1] = (t - acc[0]) - y;
+        acc[0] = t;
+    }
+
+    public long skippedRows() { return skipped; }
+    public double lastLoss() { return lastLoss; }
+    public Format format() { return format; }
+
+    private final class StatsTask extends RecursiveTask<Stats> {
+        private static final long serialVersionUID = 1L;
+        private final FileChannel ch;
+        private final List<long[]> ranges;
+        private final int from, to;
+
+        StatsTask(FileChannel ch, List<long[]> ranges, int from, int to) {
+            this.ch = ch;
+            this.ranges = ranges;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected Stats compute() {
+            if (to - from == 1) {
+                Stats s = new Stats();
+                long[] r = ranges.get(from);
+                try {
+                    s.skipped = scan(ch, r[0], r[1], s::add);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return s;
+            }
+            int mid = (from + to) >>> 1;
+            StatsTask left = new StatsTask(ch, ranges, from, mid);
+            left.fork();
+            Stats right = new StatsTask(ch, ranges, mid, to).compute();
+            Stats s = left.join();
+            s.merge(right);
+            return s;
+        }
+    }
+
+    private long scan(FileChannel ch, long start, long end, RowSink sink) throws IOException {
+        MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        if (format == Format.BINARY) {
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            int limit = buf.limit() - buf.limit() % RECORD_SIZE;
+            long bad = 0;
+            for (int p = 0; p < limit; p += RECORD_SIZE) {
+                double x = buf.getDouble(p);
+                double y = buf.getDouble(p + 8);
+                if (Double.isNaN(x) || Double.isNaN(y)) bad++;
+                else sink.accept(x, y);
+            }
+            return bad;
+        }
+        int limit = buf.limit();
+        long bad = 0;
+        int p = 0;
+        while (p < limit) {
+            int lineEnd = p;
+            while (lineEnd < limit && buf.get(lineEnd) != '\n') lineEnd++;
+            int e = lineEnd;
+            if (e > p && buf.get(e - 1) == '\r') e--;
+            if (e > p) {
+                int comma = p;
+                while (comma < e && buf.get(comma) != ',') comma++;
+                double x = comma < e ? CsvChunks.parseDecimal(buf, p, comma) : Double.NaN;
+                double y = comma < e ? CsvChunks.parseDecimal(buf, comma + 1, e) : Double.NaN;
+                if (Double.isNaN(x) || Double.isNaN(y)) bad++;
+                else sink.accept(x, y);
+            }
+            p = lineEnd + 1;
+        }
+        return bad;
+    }
+}
@@ -8,6 +8,8 @@ pub enum Request {
     Infer { weights: Weights, x: f64 },
     #[serde(rename = "infer_batch")]
     InferBatch { weights: Weights, xs: Vec<f64> },
+    #[serde(rename = "infer_file")]
+    InferFile { path: String, x: Vec<f64> },
 }
 
 #[derive(Serialize, Deserialize, Clone, Copy)]
@@ -23,6 +25,21 @@ pub struct Response {
     pub mode: String,
 }
 
+pub fn infer_in_place(weights: Weights, xs: &mut [f64]) {
+    for x in xs.iter_mut() {
+        *x = weights.w * *x + weights.b;
+    }
+}
+
+pub fn infer_direct(buf: &mut [u8], count: usize, weights: Weights) -> usize {
+    let n = count.min(buf.len() / 8);
+    for chunk in buf.chunks_exact_mut(8).take(n) {
+        let x = f64::from_le_bytes(chunk.try_into().unwrap());
+        chunk.copy_from_slice(&(weights.w * x + weights.b).to_le_bytes());
+    }
+    n
+}
+
 pub fn process_request(input: &str) -> String {
     match serde_json::from_str::<Request>(input) {
         Ok(Request::Infer { weights, x }) => {
@@ -35,7 +52,8 @@ pub fn process_request(input: &str) -> String {
             .unwrap()
         }
         Ok(Request::InferBatch { weights, xs }) => {
-            let ys: Vec<f64> = xs.iter().map(|x| weights.w * x + weights.b).collect();
+            let mut ys = xs;
+            infer_in_place(weights, &mut ys);
             serde_json::to_string(&Response {
                 ok: true,
                 result: json!({ "ys": ys }),
@@ -43,6 +61,21 @@ pub fn process_request(input: &str) -> String {
             })
             .unwrap()
         }
+        Ok(Request::InferFile { path, x }) => {
+            let ys = crate::model_file::ModelFile::open(&path)
+                .ok()
+                .and_then(|m| m.predict(&x).map(|ys| (m.version, ys)));
+            let (ok, result) = match ys {
+                Some((version, ys)) => (true, json!({ "ys": ys, "version": version })),
+                None => (false, json!({ "error": "invalid_model" })),
+            };
+            serde_json::to_string(&Response {
+                ok,
+                result,
+                mode: "".to_string(),
+            })
+            .unwrap()
+        }
         Err(_) => serde_json::to_string(&Response {
             ok: false,
             result: json!({ "error": "invalid_request" }),
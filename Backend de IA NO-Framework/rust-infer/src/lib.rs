@@ -1,10 +1,11 @@
 pub mod core;
+pub mod model_file;
 
 use std::ffi::{CStr, CString};
 use std::os::raw::c_char;
 
-use jni::objects::{JClass, JString};
-use jni::sys::jstring;
+use jni::objects::{JByteBuffer, JClass, JString};
+use jni::sys::{jdouble, jint, jstring};
 use jni::JNIEnv;
 
 #[no_mangle]
@@ -44,6 +45,27 @@ pub extern "system" fn Java_ia_IARustAdapter_iaExecuteJNI(
     j_out.into_raw()
 }
 
+#[no_mangle]
+pub extern "system" fn Java_ia_IARustAdapter_iaInferDirect(
+    env: JNIEnv,
+    _class: JClass,
+    xs: JByteBuffer,
+    count: jint,
+    w: jdouble,
+    b: jdouble,
+) -> jint {
+    let ptr = match env.get_direct_buffer_address(&xs) {
+        Ok(p) if !p.is_null() => p,
+        _ => return -1,
+    };
+    let cap = match env.get_direct_buffer_capacity(&xs) {
+        Ok(c) => c,
+        Err(_) => return -1,
+    };
+    let buf = unsafe { std::slice::from_raw_parts_mut(ptr, cap) };
+    core::infer_direct(buf, count.max(0) as usize, core::Weights { w, b }) as jint
+}
+
 pub fn stamp_mode(mut json: String, mode: &str) -> String {
     if let Ok(mut v) = serde_json::from_str::<serde_json::Value>(&json) {
         if let Some(obj) = v.as_object_mut() {
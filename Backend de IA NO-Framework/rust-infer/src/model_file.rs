@@ -0,0 +1,148 @@
+use std::fs::File;
+use std::io;
+use std::path::Path;
+
+use memmap2::Mmap;
+
+pub const MAGIC: u32 = 0x464D_4149;
+pub const FORMAT_VERSION: u16 = 1;
+const HEADER_SIZE: usize = 64;
+const LAYER_ENTRY_SIZE: usize = 32;
+const ALIGN: usize = 64;
+
+#[derive(Clone, Copy, PartialEq, Eq)]
+pub enum Activation {
+    Linear,
+    Relu,
+    Tanh,
+}
+
+pub struct Layer {
+    pub inputs: usize,
+    pub outputs: usize,
+    pub activation: Activation,
+    weights: usize,
+    bias: usize,
+}
+
+pub struct ModelFile {
+    map: Mmap,
+    elem: usize,
+    pub version: u64,
+    pub layers: Vec<Layer>,
+}
+
+fn invalid(msg: &str) -> io::Error {
+    io::Error::new(io::ErrorKind::InvalidData, msg.to_string())
+}
+
+fn u16_at(b: &[u8], p: usize) -> u16 {
+    u16::from_le_bytes(b[p..p + 2].try_into().unwrap())
+}
+
+fn u32_at(b: &[u8], p: usize) -> u32 {
+    u32::from_le_bytes(b[p..p + 4].try_into().unwrap())
+}
+
+fn u64_at(b: &[u8], p: usize) -> u64 {
+    u64::from_le_bytes(b[p..p + 8].try_into().unwrap())
+}
+
+impl ModelFile {
+    pub fn open<P: AsRef<Path>>(path: P) -> io::Result<ModelFile> {
+        let file = File::open(path)?;
+        let map = unsafe { Mmap::map(&file)? };
+        let b = &map[..];
+        if b.len() < HEADER_SIZE || u32_at(b, 0) != MAGIC {
+            return Err(invalid("bad magic"));
+        }
+        if u16_at(b, 4) != FORMAT_VERSION {
+            return Err(invalid("unsupported format version"));
+        }
+        let elem = b[6] as usize;
+        if elem != 4 && elem != 8 {
+            return Err(invalid("bad element size"));
+        }
+        let depth = u32_at(b, 8) as usize;
+        if u64_at(b, 24) as usize != b.len() || depth == 0 || HEADER_SIZE + depth * LAYER_ENTRY_SIZE > b.len() {
+            return Err(invalid("truncated model file"));
+        }
+        let mut layers: Vec<Layer> = Vec::with_capacity(depth);
+        for i in 0..depth {
+            let p = HEADER_SIZE + i * LAYER_ENTRY_SIZE;
+            let inputs = u32_at(b, p) as usize;
+            let outputs = u32_at(b, p + 4) as usize;
+            let activation = match u32_at(b, p + 8) {
+                0 => Activation::Linear,
+                1 => Activation::Relu,
+                2 => Activation::Tanh,
+                _ => return Err(invalid("bad activation")),
+            };
+            let weights = u64_at(b, p + 16) as usize;
+            let bias = u64_at(b, p + 24) as usize;
+            if inputs == 0
+                || outputs == 0
+                || weights % ALIGN != 0
+                || bias % ALIGN != 0
+                || weights + inputs * outputs * elem > b.len()
+                || bias + outputs * elem > b.len()
+            {
+                return Err(invalid("bad layer"));
+            }
+            if let Some(prev) = layers.last() {
+                if prev.outputs != inputs {
+                    return Err(invalid("layer shape mismatch"));
+                }
+            }
+            layers.push(Layer { inputs, outputs, activation, weights, bias });
+        }
+        let version = u64_at(b, 16);
+        Ok(ModelFile { map, elem, version, layers })
+    }
+
+    fn value(&self, base: usize, i: usize) -> f64 {
+        let p = base + i * self.elem;
+        if self.elem == 8 {
+            f64::from_le_bytes(self.map[p..p + 8].try_into().unwrap())
+        } else {
+            f32::from_le_bytes(self.map[p..p + 4].try_into().unwrap()) as f64
+        }
+    }
+
+    pub fn verify(&self) -> bool {
+        let mut h: u64 = 0xcbf2_9ce4_8422_2325;
+        for &byte in &self.map[HEADER_SIZE..] {
+            h ^= byte as u64;
+            h = h.wrapping_mul(0x0100_0000_01b3);
+        }
+        h == u64_at(&self.map, 32)
+    }
+
+    pub fn inputs(&self) -> usize {
+        self.layers[0].inputs
+    }
+
+    pub fn predict(&self, x: &[f64]) -> Option<Vec<f64>> {
+        if x.len() < self.inputs() {
+            return None;
+        }
+        let mut cur = x[..self.inputs()].to_vec();
+        for l in &self.layers {
+            let mut next = Vec::with_capacity(l.outputs);
+            for o in 0..l.outputs {
+                let row = l.weights + o * l.inputs * self.elem;
+                let mut y = self.value(l.bias, o);
+                for (i, xi) in cur.iter().enumerate() {
+                    y += self.value(row, i) * xi;
+                }
+                next.push(match l.activation {
+                    Activation::Relu => y.max(0.0),
+                    Activation::Tanh => y.tanh(),
+                    Activation::Linear => y,
+                });
+            }
+            cur = next;
+        }
+        Some(cur)
+    }
+}
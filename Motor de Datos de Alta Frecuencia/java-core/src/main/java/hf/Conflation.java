@@ -0,0 +1,95 @@
+package hf;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+class Conflation {
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final long[] version;
+    private final long[] taken;
+    private final long[] ts;
+    private final int[] kind;
+    private final double[] price;
+    private final long[] qty;
+    private final long[] offer;
+    private final int[] queued;
+    private final Sequencer queue;
+    private final int[] queueSym;
+    private final long[] queueBarrier;
+
+    Conflation(int maxSymbols) {
+        int n = Math.max(1, maxSymbols);
+        version = new long[n];
+        taken = new long[n];
+        ts = new long[n];
+        kind = new int[n];
+        price = new double[n];
+        qty = new long[n];
+        offer = new long[n];
+        queued = new int[n];
+        queue = new Sequencer(n * 2, WaitStrategy.busySpin());
+        queueSym = new int[queue.capacity()];
+        queueBarrier = new long[queue.capacity()];
+    }
+
+    boolean pending(int s) {
+        return (int) INTS.getVolatile(queued, s) != 0;
+    }
+
+    void put(int s, long t, int k, double p, long q, long offerNanos, Sequencer ring) {
+        long v;
+        while (true) {
+            v = (long) LONGS.getVolatile(version, s);
+            if ((v & 1) == 0 && LONGS.compareAndSet(version, s, v, v + 1)) break;
+            Thread.onSpinWait();
+        }
+        ts[s] = t; kind[s] = k; price[s] = p; qty[s] = q; offer[s] = offerNanos;
+        LONGS.setRelease(version, s, v + 2);
+        if (INTS.compareAndSet(queued, s, 0, 1)) {
+            long seq;
+            while ((seq = queue.tryNext()) < 0) Thread.onSpinWait();
+            int i = queue.index(seq);
+            queueSym[i] = s;
+            queueBarrier[i] = ring.claimed();
+            queue.publish(seq);
+        }
+    }
+
+    int drain(long ringConsumed, HFRustAdapter.Batch out, long[] offered) {
+        long next = queue.consumed() + 1;
+        long hi = queue.highestPublished(next, queue.claimed());
+        long seq = next;
+        int added = 0;
+        for (; seq <= hi && out.size < out.capacity(); seq++) {
+            int i = queue.index(seq);
+            if (queueBarrier[i] > ringConsumed) break;
+            int s = queueSym[i];
+            INTS.setVolatile(queued, s, 0);
+            long v1;
+            long t;
+            int k;
+            double p;
+            long q;
+            long o;
+            while (true) {
+                v1 = (long) LONGS.getAcquire(version, s);
+                if ((v1 & 1) != 0) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                t = ts[s]; k = kind[s]; p = price[s]; q = qty[s]; o = offer[s];
+                VarHandle.loadLoadFence();
+                if ((long) LONGS.getOpaque(version, s) == v1) break;
+            }
+            if (v1 == taken[s]) continue;
+            taken[s] = v1;
+            offered[out.size] = o;
+            out.add(t, s, k, p, q);
+            added++;
+        }
+        if (seq > next) queue.release(seq - 1);
+        return added;
+    }
+}
@@ -0,0 +1,227 @@
+package hf;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class CsvTapeSource {
+    private final Path file;
+    private final int chunkBytes;
+    private final int parallelism;
+    private long skipped = 0;
+
+    public CsvTapeSource(Path file) {
+        this(file, 16 << 20, Runtime.getRuntime().availableProcessors());
+    }
+
+    public CsvTapeSource(Path file, int chunkBytes, int parallelism) {
+        this.file = file;
+        this.chunkBytes = Math.max(4096, chunkBytes);
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public long feed(HFEngine engine) {
+        return feed(engine.symbols(), (ts, symbolId, price, qty) -> {
+            while (!engine.offer(ts, symbolId, price, qty)) Thread.onSpinWait();
+        });
+    }
+
+    public interface Sink {
+        void accept(long ts, int symbolId, double price, long qty);
+    }
+
+    public long feed(SymbolTable symbols, Sink sink) {
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "hf-tape-parser");
+            t.setDaemon(true);
+            return t;
+        });
+        ThreadLocal<SymbolCache> caches = ThreadLocal.withInitial(() -> new SymbolCache(symbols));
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<long[]> ranges = CsvChunks.split(ch, chunkBytes);
+            ArrayDeque<Future<Chunk>> inFlight = new ArrayDeque<>();
+            int submitted = 0;
+            long total = 0;
+            while (submitted < ranges.size() || !inFlight.isEmpty()) {
+                while (submitted < ranges.size() && inFlight.size() < parallelism * 2) {
+                    long[] r = ranges.get(submitted++);
+                    inFlight.add(workers.submit(() -> parse(ch, r[0], r[1], caches.get())));
+                }
+                Chunk c = inFlight.poll().get();
+                for (int i=0;i<c.size;i++) sink.accept(c.ts[i], c.sym[i], c.price[i], c.qty[i]);
+                total += c.size;
+                skipped += c.skipped;
+            }
+            return total;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    public long skippedLines() { return skipped; }
+
+    private static Chunk parse(FileChannel ch, long start, long end, SymbolCache cache) throws IOException {
+        MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        int limit = buf.limit();
+        Chunk c = new Chunk(Math.max(16, limit / 24));
+        int p = 0;
+        while (p < limit) {
+            int lineEnd = p;
+            while (lineEnd < limit && buf.get(lineEnd) != '\n') lineEnd++;
+            int e = lineEnd;
+            if (e > p && buf.get(e - 1) == '\r') e--;
+            if (!parseLine(buf, p, e, cache, c) && e > p) c.skipped++;
+            p = lineEnd + 1;
+        }
+        return c;
+    }
+
+    private static boolean parseLine(ByteBuffer buf, int p, int end, SymbolCache cache, Chunk out) {
+        if (p >= end) return false;
+        byte first = buf.get(p);
+        if (first < '0' || first > '9') return false;
+        long ts = 0;
+        while (p < end) {
+            byte b = buf.get(p);
+            if (b == ',') break;
+            if (b < '0' || b > '9') return false;
+            ts = ts * 10 + (b - '0');
+            p++;
+        }
+        if (p >= end) return false;
+        int symStart = ++p;
+        int hash = 0;
+        while (p < end && buf.get(p) != ',') {
+            hash = 31 * hash + buf.get(p);
+            p++;
+        }
+        if (p >= end) return false;
+        int symbolId = cache.intern(buf, symStart, p - symStart, hash);
+        int priceStart = ++p;
+        while (p < end && buf.get(p) != ',') p++;
+        if (p >= end) return false;
+        double price = CsvChunks.parseDecimal(buf, priceStart, p);
+        if (Double.isNaN(price)) return false;
+        p++;
+        long qty = 0;
+        boolean neg = p < end && buf.get(p) == '-';
+        if (neg) p++;
+        int qtyStart = p;
+        while (p < end) {
+            byte b = buf.get(p);
+            if (b < '0' || b > '9') break;
+            qty = qty * 10 + (b - '0');
+            p++;
+        }
+        if (p == qtyStart) return false;
+        out.add(ts, symbolId, price, neg ? -qty : qty);
+        return true;
+    }
+
+    private static final class Chunk {
+        long[] ts;
+        int[] sym;
+        double[] price;
+        long[] qty;
+        int size;
+        long skipped;
+
+        Chunk(int capacity) {
+            ts = new long[capacity];
+            sym = new int[capacity];
+            price = new double[capacity];
+            qty = new long[capacity];
+        }
+
+        void add(long t, int s, double p, long q) {
+            if (size == ts.length) {
+                int n = size * 2;
+                ts = Arrays.copyOf(ts, n);
+                sym = Arrays.copyOf(sym, n);
+                price = Arrays.copyOf(price, n);
+                qty = Arrays.copyOf(qty, n);
+            }
+            ts[size] = t; sym[size] = s; price[size] = p; qty[size] = q;
+            size++;
+        }
+    }
+
+    private static final class SymbolCache {
+        private final SymbolTable symbols;
+        private byte[][] keys = new byte[256][];
+        private int[] ids = new int[256];
+        private int[] hashes = new int[256];
+        private int count = 0;
+
+        SymbolCache(SymbolTable symbols) {
+            this.symbols = symbols;
+        }
+
+        int intern(ByteBuffer buf, int off, int len, int hash) {
+            int mask = keys.length - 1;
+            int i = mix(hash) & mask;
+            while (true) {
+                byte[] k = keys[i];
+                if (k == null) break;
+                if (hashes[i] == hash && equals(k, buf, off, len)) return ids[i];
+                i = (i + 1) & mask;
+            }
+            byte[] key = new byte[len];
+            for (int j=0;j<len;j++) key[j] = buf.get(off + j);
+            int id = symbols.intern(new String(key, StandardCharsets.UTF_8));
+            keys[i] = key;
+            ids[i] = id;
+            hashes[i] = hash;
+            if (++count * 2 > keys.length) grow();
+            return id;
+        }
+
+        private static boolean equals(byte[] k, ByteBuffer buf, int off, int len) {
+            if (k.length != len) return false;
+            for (int j=0;j<len;j++) if (k[j] != buf.get(off + j)) return false;
+            return true;
+        }
+
+        private static int mix(int h) {
+            h *= 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        private void grow() {
+            byte[][] oldKeys = keys;
+            int[] oldIds = ids;
+            int[] oldHashes = hashes;
+            keys = new byte[oldKeys.length * 2][];
+            ids = new int[keys.length];
+            hashes = new int[keys.length];
+            int mask = keys.length - 1;
+            for (int j=0;j<oldKeys.length;j++) {
+                if (oldKeys[j] == null) continue;
+                int i = mix(oldHashes[j]) & mask;
+                while (keys[i] != null) i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                ids[i] = oldIds[j];
+                hashes[i] = oldHashes[j];
+            }
+        }
+    }
+}
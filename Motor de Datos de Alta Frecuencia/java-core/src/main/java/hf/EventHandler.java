@@ -0,0 +1,9 @@
+package hf;
+
+public interface EventHandler {
+    void onEvent(int lane, long ts, int symbolId, double price, long qty, double notional);
+
+    default void onEvent(int lane, long ts, int symbolId, int kind, double price, long qty, double notional) {
+        onEvent(lane, ts, symbolId, price, qty, notional);
+    }
+}
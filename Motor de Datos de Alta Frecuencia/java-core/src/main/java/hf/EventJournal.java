@@ -0,0 +1,174 @@
+package hf;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+public class EventJournal implements EventHandler, AutoCloseable {
+    static final int RECORD_SIZE = 32;
+    static final int FLAG_VALID = 1;
+    static final int KIND_SHIFT = 8;
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final SymbolTable symbols;
+    private final LaneWriter[] writers;
+    private final ExecutorService flusher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "hf-journal-flush");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile RuntimeException flushError;
+
+    public EventJournal(Path dir, long segmentBytes, int lanes, SymbolTable symbols) {
+        this.dir = dir;
+        long records = Math.max(1, Math.min(segmentBytes, Integer.MAX_VALUE) / RECORD_SIZE);
+        this.segmentBytes = records * RECORD_SIZE;
+        this.symbols = symbols;
+        this.writers = new LaneWriter[Math.max(1, lanes)];
+        try {
+            Files.createDirectories(dir);
+            try (Stream<Path> existing = Files.list(dir)) {
+                if (existing.anyMatch(p -> p.getFileName().toString().endsWith(".journal"))) {
+                    throw new IllegalStateException("journal directory is not empty: " + dir);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (int i=0;i<writers.length;i++) writers[i] = new LaneWriter(i);
+    }
+
+    static Path segmentPath(Path dir, int lane, int segment) {
+        return dir.resolve(String.format("lane-%d-%08d.journal", lane, segment));
+    }
+
+    static Path symbolsPath(Path dir, int lane) {
+        return dir.resolve("lane-" + lane + ".symbols");
+    }
+
+    public void onEvent(int lane, long ts, int symbolId, double price, long qty, double notional) {
+        writers[lane].append(ts, symbolId, EventKind.TRADE, price, qty);
+    }
+
+    public void onEvent(int lane, long ts, int symbolId, int kind, double price, long qty, double notional) {
+        writers[lane].append(ts, symbolId, kind, price, qty);
+    }
+
+    public void flush() {
+        for (LaneWriter w : writers) w.flush();
+        awaitFlusher();
+    }
+
+    public void close() {
+        for (LaneWriter w : writers) w.close();
+        awaitFlusher();
+        flusher.shutdown();
+    }
+
+    private void awaitFlusher() {
+        if (flusher.isShutdown()) return;
+        try {
+            flusher.submit(() -> {}).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        RuntimeException e = flushError;
+        if (e != null) {
+            flushError = null;
+            throw e;
+        }
+    }
+
+    private void forceLater(MappedByteBuffer old) {
+        flusher.execute(() -> {
+            try {
+                old.force();
+            } catch (RuntimeException e) {
+                flushError = e;
+            }
+        });
+    }
+
+    public Path dir() { return dir; }
+    public long segmentBytes() { return segmentBytes; }
+
+    private final class LaneWriter {
+        private final int lane;
+        private boolean[] known = new boolean[64];
+        private Writer symbolOut;
+        private MappedByteBuffer buf;
+        private int segment = -1;
+
+        LaneWriter(int lane) {
+            this.lane = lane;
+        }
+
+        void append(long ts, int symbolId, int kind, double price, long qty) {
+            if (symbolId >= known.length || !known[symbolId]) recordSymbol(symbolId);
+            if (buf == null || buf.remaining() < RECORD_SIZE) roll();
+            int p = buf.position();
+            buf.putLong(p, ts);
+            buf.putInt(p + 8, symbolId);
+            buf.putDouble(p + 16, price);
+            buf.putLong(p + 24, qty);
+            buf.putInt(p + 12, FLAG_VALID | (kind & 0xff) << KIND_SHIFT);
+            buf.position(p + RECORD_SIZE);
+        }
+
+        private void recordSymbol(int symbolId) {
+            if (symbolId >= known.length) known = Arrays.copyOf(known, Math.max(symbolId + 1, known.length * 2));
+            known[symbolId] = true;
+            try {
+                if (symbolOut == null) {
+                    symbolOut = Files.newBufferedWriter(symbolsPath(dir, lane), StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                symbolOut.write(symbolId + "," + symbols.name(symbolId) + "\n");
+                symbolOut.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void roll() {
+            if (buf != null) forceLater(buf);
+            segment++;
+            Path p = segmentPath(dir, lane, segment);
+            try (FileChannel ch = FileChannel.open(p, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+                buf.order(ByteOrder.LITTLE_ENDIAN);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void flush() {
+            if (buf != null) buf.force();
+        }
+
+        void close() {
+            flush();
+            buf = null;
+            try {
+                if (symbolOut != null) symbolOut.close();
+            } catch (IOException ignored) {
+            }
+            symbolOut = null;
+        }
+    }
+}
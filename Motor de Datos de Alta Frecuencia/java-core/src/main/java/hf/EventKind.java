@@ -0,0 +1,33 @@
+package hf;
+
+public final class EventKind {
+    public static final int TRADE = 0;
+    public static final int ADD = 1;
+    public static final int MODIFY = 2;
+    public static final int CANCEL = 3;
+
+    public static final int BID = 0;
+    public static final int ASK = 4;
+
+    private static final int ACTION_MASK = 3;
+
+    private EventKind() {}
+
+    public static int of(int action, int side) {
+        return (action & ACTION_MASK) | (side & ASK);
+    }
+
+    public static int action(int kind) { return kind & ACTION_MASK; }
+    public static int side(int kind) { return kind & ASK; }
+    public static boolean isAsk(int kind) { return (kind & ASK) != 0; }
+
+    public static String name(int kind) {
+        String side = isAsk(kind) ? "ask" : "bid";
+        switch (action(kind)) {
+            case ADD: return "add_" + side;
+            case MODIFY: return "modify_" + side;
+            case CANCEL: return "cancel_" + side;
+            default: return "trade_" + side;
+        }
+    }
+}
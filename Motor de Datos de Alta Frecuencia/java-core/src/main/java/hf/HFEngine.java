@@ -1,92 +1,212 @@
 package hf;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
 
 public class HFEngine {
+    public enum Storage { OBJECT, PRIMITIVE }
+
     static class Event {
         long ts;
         String symbol;
+        int symbolId;
+        int kind;
+        long offerNanos;
         double price;
         long qty;
-        String csv;
     }
-    private final int capacity;
-    private final Event[] ring;
-    private final AtomicInteger head = new AtomicInteger(0);
-    private final AtomicInteger tail = new AtomicInteger(0);
+    private final Storage storage;
+    private final SymbolTable symbols;
+    private final Lane[] lanes;
     private final ExecutorService pool;
     private final HFRustAdapter adapter;
+    private final List<EventHandler> handlers = new ArrayList<>();
     private volatile boolean running = false;
-    private long processed = 0;
-    private double lastNotional = 0.0;
+    private int batchSize = 256;
+    private LatencyStats latency;
+    private OverflowPolicy overflow = OverflowPolicy.REJECT;
 
     public HFEngine(int capacity, int threads, HFRustAdapter adapter) {
-        this.capacity = capacity;
-        this.ring = new Event[capacity];
-        for (int i=0;i<capacity;i++) ring[i] = new Event();
-        this.pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        this(capacity, threads, adapter, Storage.OBJECT);
+    }
+
+    public HFEngine(int capacity, int threads, HFRustAdapter adapter, Storage storage) {
+        this(capacity, threads, adapter, storage, WaitStrategy.busySpin());
+    }
+
+    public HFEngine(int capacity, int threads, HFRustAdapter adapter, Storage storage, WaitStrategy wait) {
+        this(capacity, threads, 1, adapter, storage, wait);
+    }
+
+    public HFEngine(int capacity, int threads, int lanes, HFRustAdapter adapter, Storage storage, WaitStrategy wait) {
+        this(capacity, threads, lanes, adapter, storage, wait, new SymbolTable(1 << 16));
+    }
+
+    public HFEngine(int capacity, int threads, int lanes, HFRustAdapter adapter, Storage storage, WaitStrategy wait, SymbolTable symbols) {
+        this.storage = storage;
+        this.symbols = symbols;
+        this.lanes = new Lane[Math.max(1, lanes)];
+        for (int i=0;i<this.lanes.length;i++) {
+            this.lanes[i] = new Lane(i, capacity, storage, i == 0 ? wait : wait.copy(), adapter);
+        }
+        this.pool = Executors.newFixedThreadPool(Math.max(this.lanes.length, threads));
         this.adapter = adapter;
     }
 
     public boolean offer(long ts, String symbol, double price, long qty) {
-        int h = head.get();
-        int t = tail.get();
-        int next = (h + 1) % capacity;
-        if (next == t) return false;
-        Event e = ring[h];
-        e.ts = ts; e.symbol = symbol; e.price = price; e.qty = qty;
-        e.csv = ts + "," + symbol + "," + price + "," + qty;
-        head.set(next);
-        return true;
+        return offer(ts, symbol, EventKind.TRADE, price, qty);
+    }
+
+    public boolean offer(long ts, int symbolId, double price, long qty) {
+        return offer(ts, symbolId, EventKind.TRADE, price, qty);
+    }
+
+    public boolean offer(long ts, String symbol, int kind, double price, long qty) {
+        int symbolId = symbols.intern(symbol);
+        return lanes[laneOf(symbolId)].offer(ts, symbol, symbolId, kind, price, qty);
+    }
+
+    public boolean offer(long ts, int symbolId, int kind, double price, long qty) {
+        String symbol = storage == Storage.PRIMITIVE ? null : symbols.name(symbolId);
+        return lanes[laneOf(symbolId)].offer(ts, symbol, symbolId, kind, price, qty);
+    }
+
+    public int laneOf(int symbolId) {
+        return lanes.length == 1 ? 0 : symbolId % lanes.length;
+    }
+
+    public void addHandler(EventHandler handler) {
+        if (running) throw new IllegalStateException("handlers must be added before start()");
+        handlers.add(handler);
+    }
+
+    public SymbolAnalytics enableAnalytics(int maxSymbols, long barWidth, int rollingBars) {
+        SymbolAnalytics analytics = new SymbolAnalytics(Math.min(maxSymbols, symbols.capacity()), barWidth, rollingBars);
+        addHandler(analytics);
+        return analytics;
+    }
+
+    public OrderBook enableOrderBook(int maxSymbols, double tickSize) {
+        if (lossy(overflow)) throw new IllegalStateException("order book requires a lossless overflow policy, not " + overflow);
+        OrderBook book = new OrderBook(Math.min(maxSymbols, symbols.capacity()), tickSize);
+        addHandler(book);
+        return book;
+    }
+
+    public TickStore enableTickStore(int maxSymbols, long... tierWidths) {
+        TickStore store = new TickStore(Math.min(maxSymbols, symbols.capacity()), tierWidths);
+        addHandler(store);
+        return store;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (running) throw new IllegalStateException("batch size must be set before start()");
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public void setOverflowPolicy(OverflowPolicy policy) {
+        setOverflowPolicy(policy, 0L);
+    }
+
+    public void setOverflowPolicy(OverflowPolicy policy, long blockTimeoutNanos) {
+        if (running) throw new IllegalStateException("overflow policy must be set before start()");
+        if ((policy == OverflowPolicy.DROP_OLDEST || policy == OverflowPolicy.CONFLATE) && storage != Storage.PRIMITIVE) {
+            throw new IllegalArgumentException(policy + " requires PRIMITIVE storage");
+        }
+        if (lossy(policy)) {
+            for (EventHandler h : handlers) {
+                if (h instanceof OrderBook) throw new IllegalArgumentException(policy + " would drop order book deltas");
+            }
+        }
+        this.overflow = policy;
+        for (Lane lane : lanes) lane.configure(policy, Math.max(0L, blockTimeoutNanos), symbols.capacity());
+    }
+
+    private static boolean lossy(OverflowPolicy policy) {
+        return policy == OverflowPolicy.DROP_NEWEST || policy == OverflowPolicy.DROP_OLDEST || policy == OverflowPolicy.CONFLATE;
+    }
+
+    public EventJournal enableJournal(Path dir, long segmentBytes) {
+        EventJournal journal = new EventJournal(dir, segmentBytes, lanes.length, symbols);
+        addHandler(journal);
+        return journal;
+    }
+
+    public LatencyStats enableLatency(int symbolClasses) {
+        if (running) throw new IllegalStateException("latency tracking must be enabled before start()");
+        latency = new LatencyStats(lanes.length, symbolClasses, symbols);
+        for (Lane lane : lanes) lane.latency(latency);
+        return latency;
     }
 
     public void start() {
         running = true;
-        pool.submit(this::consumeLoop);
+        EventHandler[] hs = handlers.toArray(new EventHandler[0]);
+        for (Lane lane : lanes) {
+            lane.start(hs, batchSize, latency);
+            pool.submit(lane::consumeLoop);
+        }
     }
 
     public void stop() {
         running = false;
+        for (Lane lane : lanes) lane.stop();
         pool.shutdownNow();
+        try {
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (EventHandler h : handlers) {
+            if (h instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) h).close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
         adapter.shutdown();
     }
 
-    private void consumeLoop() {
-        while (running) {
-            int t = tail.get();
-            if (t == head.get()) {
-                Thread.onSpinWait();
-                continue;
-            }
-            Event e = ring[t];
-            tail.set((t + 1) % capacity);
-            String out = adapter.parseCsv(e.csv);
-            double notional = extractDouble(out, "notional");
-            lastNotional = notional;
-            processed++;
+    public long processedCount() {
+        long total = 0;
+        for (Lane lane : lanes) total += lane.processed();
+        return total;
+    }
+
+    public double lastNotional() {
+        Lane latest = lanes[0];
+        for (Lane lane : lanes) {
+            if (lane.lastTs() > latest.lastTs()) latest = lane;
         }
+        return latest.lastNotional();
     }
 
-    public long processedCount() { return processed; }
-    public double lastNotional() { return lastNotional; }
+    public long droppedCount() {
+        long total = 0;
+        for (Lane lane : lanes) total += lane.dropped();
+        return total;
+    }
 
-    private double extractDouble(String s, String key) {
-        String k = "\"" + key + "\"";
-        int i = s.indexOf(k);
-        int start = s.indexOf(':', i);
-        int j = start + 1;
-        while (j < s.length()) {
-            char c = s.charAt(j);
-            if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') j++;
-            else break;
-        }
-        try {
-            return Double.parseDouble(s.substring(start + 1, j).trim());
-        } catch (Exception ex) {
-            return 0.0;
-        }
+    public long conflatedCount() {
+        long total = 0;
+        for (Lane lane : lanes) total += lane.conflated();
+        return total;
     }
-}
 
+    public long processedCount(int lane) { return lanes[lane].processed(); }
+    public double lastNotional(int lane) { return lanes[lane].lastNotional(); }
+    public int backlog(int lane) { return lanes[lane].backlog(); }
+    public int laneCount() { return lanes.length; }
+    public boolean isRunning() { return running; }
+    public int batchSize() { return batchSize; }
+    public LatencyStats latency() { return latency; }
+    public OverflowPolicy overflowPolicy() { return overflow; }
+    public Storage storage() { return storage; }
+    public int capacity() { return lanes[0].capacity(); }
+    public SymbolTable symbols() { return symbols; }
+}
@@ -1,25 +1,36 @@
 package hf;
 
+import java.nio.file.Path;
 import java.util.Random;
 
 public class HFMain {
     public static void main(String[] args) throws Exception {
         HFRustAdapter adapter = new HFRustAdapter();
-        HFEngine engine = new HFEngine(1 << 14, Runtime.getRuntime().availableProcessors(), adapter);
+        HFEngine.Storage storage = args.length > 0 ? HFEngine.Storage.valueOf(args[0].toUpperCase()) : HFEngine.Storage.OBJECT;
+        WaitStrategy wait = args.length > 1 ? WaitStrategy.of(args[1]) : WaitStrategy.busySpin();
+        int lanes = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        HFEngine engine = new HFEngine(1 << 14, Runtime.getRuntime().availableProcessors(), lanes, adapter, storage, wait);
+        SymbolAnalytics analytics = engine.enableAnalytics(1024, 1000, 60);
+        LatencyStats latency = engine.enableLatency(1);
         engine.start();
-        Random r = new Random(42);
         long start = System.nanoTime();
-        int total = 200000;
-        int sent = 0;
-        while (sent < total) {
-            long ts = System.currentTimeMillis();
-            String sym = sent % 2 == 0 ? "ABC" : "XYZ";
-            double price = 50 + r.nextDouble() * 10;
-            long qty = 1 + r.nextInt(1000);
-            if (engine.offer(ts, sym, price, qty)) {
-                sent++;
-            } else {
-                Thread.onSpinWait();
+        long total;
+        if (args.length > 3) {
+            total = new CsvTapeSource(Path.of(args[3])).feed(engine);
+        } else {
+            Random r = new Random(42);
+            total = 200000;
+            int sent = 0;
+            while (sent < total) {
+                long ts = System.currentTimeMillis();
+                String sym = sent % 2 == 0 ? "ABC" : "XYZ";
+                double price = 50 + r.nextDouble() * 10;
+                long qty = 1 + r.nextInt(1000);
+                if (engine.offer(ts, sym, price, qty)) {
+                    sent++;
+                } else {
+                    Thread.onSpinWait();
+                }
             }
         }
         while (engine.processedCount() < total) {
@@ -28,7 +39,9 @@ public class HFMain {
         long end = System.nanoTime();
         double seconds = (end - start) / 1_000_000_000.0;
         double throughput = engine.processedCount() / seconds;
-        System.out.println("{\"processed\":" + engine.processedCount() + ",\"throughput\":" + throughput + ",\"last_notional\":" + engine.lastNotional() + "}");
+        SymbolAnalytics.Snapshot abc = new SymbolAnalytics.Snapshot();
+        analytics.read(engine.symbols().idOf("ABC"), abc);
+        System.out.println("{\"processed\":" + engine.processedCount() + ",\"throughput\":" + throughput + ",\"last_notional\":" + engine.lastNotional() + ",\"abc_vwap\":" + abc.vwap + ",\"abc_rolling_volume\":" + abc.rollingVolume + ",\"latency\":" + latency.toJson() + "}");
         engine.stop();
     }
 }
@@ -3,14 +3,71 @@ package hf;
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class HFRustAdapter {
     public enum Mode { JNI, IPC, JAVA }
+
+    public static final class ParseResult {
+        public long ts;
+        public int symbolId;
+        public double price;
+        public long qty;
+        public double notional;
+    }
+
+    public static final class Batch {
+        public final long[] ts;
+        public final int[] symbolId;
+        public final int[] kind;
+        public final double[] price;
+        public final long[] qty;
+        public final double[] notional;
+        public int size;
+
+        public Batch(int capacity) {
+            ts = new long[capacity];
+            symbolId = new int[capacity];
+            kind = new int[capacity];
+            price = new double[capacity];
+            qty = new long[capacity];
+            notional = new double[capacity];
+        }
+
+        public boolean add(long t, int s, double p, long q) {
+            return add(t, s, EventKind.TRADE, p, q);
+        }
+
+        public boolean add(long t, int s, int k, double p, long q) {
+            if (size == ts.length) return false;
+            ts[size] = t; symbolId[size] = s; kind[size] = k; price[size] = p; qty[size] = q;
+            size++;
+            return true;
+        }
+
+        public void clear() { size = 0; }
+        public int capacity() { return ts.length; }
+    }
+
+    static final int SLOT_SIZE = 40;
+    static final int SLOT_TS = 0;
+    static final int SLOT_SYMBOL = 8;
+    static final int SLOT_PRICE = 16;
+    static final int SLOT_QTY = 24;
+    static final int SLOT_NOTIONAL = 32;
+
     private Mode mode = Mode.JAVA;
     private Process ipcProcess;
+    private final Queue<Scratch> scratches = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(this::newScratch);
 
     public HFRustAdapter() {
         init();
@@ -18,6 +75,8 @@ public class HFRustAdapter {
 
     private native String hfExecuteJNI(String requestJson);
 
+    private native int hfEnrichDirect(ByteBuffer slots, int count);
+
     private void init() {
         if (tryLoadNative()) {
             mode = Mode.JNI;
@@ -79,6 +138,130 @@ public class HFRustAdapter {
         }
     }
 
+    public Mode mode() { return mode; }
+
+    public boolean parse(long ts, int symbolId, double price, long qty, ParseResult out) {
+        out.ts = ts; out.symbolId = symbolId; out.price = price; out.qty = qty;
+        if (mode == Mode.JAVA) {
+            out.notional = price * qty;
+            return true;
+        }
+        Scratch sc = scratch.get();
+        ByteBuffer slots = sc.slots;
+        slots.putLong(SLOT_TS, ts);
+        slots.putInt(SLOT_SYMBOL, symbolId);
+        slots.putInt(SLOT_SYMBOL + 4, 0);
+        slots.putDouble(SLOT_PRICE, price);
+        slots.putLong(SLOT_QTY, qty);
+        slots.putDouble(SLOT_NOTIONAL, 0.0);
+        if (enrich(sc, 1) != 1) {
+            out.notional = 0.0;
+            return false;
+        }
+        out.notional = slots.getDouble(SLOT_NOTIONAL);
+        return true;
+    }
+
+    public int parseBatch(Batch batch) {
+        int n = batch.size;
+        if (mode == Mode.JAVA) {
+            for (int i=0;i<n;i++) batch.notional[i] = batch.price[i] * batch.qty[i];
+            return n;
+        }
+        Scratch sc = scratch.get();
+        if (sc.capacity < n) {
+            closeQuietly(sc);
+            scratches.remove(sc);
+            sc = new Scratch(Math.max(n, sc.capacity * 2));
+            scratches.add(sc);
+            scratch.set(sc);
+        }
+        ByteBuffer slots = sc.slots;
+        for (int i=0;i<n;i++) {
+            int base = i * SLOT_SIZE;
+            slots.putLong(base + SLOT_TS, batch.ts[i]);
+            slots.putInt(base + SLOT_SYMBOL, batch.symbolId[i]);
+            slots.putInt(base + SLOT_SYMBOL + 4, 0);
+            slots.putDouble(base + SLOT_PRICE, batch.price[i]);
+            slots.putLong(base + SLOT_QTY, batch.qty[i]);
+            slots.putDouble(base + SLOT_NOTIONAL, 0.0);
+        }
+        int done = enrich(sc, n);
+        if (done != n) {
+            Arrays.fill(batch.notional, 0, n, 0.0);
+            return -1;
+        }
+        for (int i=0;i<n;i++) batch.notional[i] = slots.getDouble(i * SLOT_SIZE + SLOT_NOTIONAL);
+        return n;
+    }
+
+    public boolean parse(ByteBuffer record, ParseResult out) {
+        ByteBuffer r = record.order() == ByteOrder.LITTLE_ENDIAN ? record : record.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int p = record.position();
+        return parse(r.getLong(p + SLOT_TS), r.getInt(p + SLOT_SYMBOL), r.getDouble(p + SLOT_PRICE), r.getLong(p + SLOT_QTY), out);
+    }
+
+    private int enrich(Scratch sc, int count) {
+        if (mode == Mode.JNI) return hfEnrichDirect(sc.slots, count);
+        return enrichIpc(sc, count);
+    }
+
+    private int enrichIpc(Scratch sc, int count) {
+        try {
+            if (sc.channel == null) {
+                SocketChannel ch = SocketChannel.open(new InetSocketAddress("127.0.0.1", 9094));
+                ch.socket().setTcpNoDelay(true);
+                ByteBuffer hello = ByteBuffer.wrap("BIN\n".getBytes(StandardCharsets.US_ASCII));
+                while (hello.hasRemaining()) ch.write(hello);
+                sc.channel = ch;
+            }
+            int bytes = count * SLOT_SIZE;
+            sc.header.clear();
+            sc.header.putInt(0, count);
+            sc.slots.position(0).limit(bytes);
+            while (sc.header.hasRemaining() || sc.slots.hasRemaining()) sc.channel.write(sc.frame);
+            sc.slots.position(0).limit(bytes);
+            while (sc.slots.hasRemaining()) {
+                if (sc.channel.read(sc.slots) < 0) throw new IOException("ipc closed");
+            }
+            sc.slots.clear();
+            return count;
+        } catch (IOException e) {
+            closeQuietly(sc);
+            sc.slots.clear();
+            return -1;
+        }
+    }
+
+    private Scratch newScratch() {
+        Scratch sc = new Scratch(64);
+        scratches.add(sc);
+        return sc;
+    }
+
+    private static void closeQuietly(Scratch sc) {
+        if (sc.channel == null) return;
+        try {
+            sc.channel.close();
+        } catch (IOException ignored) {
+        }
+        sc.channel = null;
+    }
+
+    static final class Scratch {
+        final int capacity;
+        final ByteBuffer slots;
+        final ByteBuffer header = ByteBuffer.allocateDirect(4).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer[] frame;
+        SocketChannel channel;
+
+        Scratch(int capacity) {
+            this.capacity = capacity;
+            slots = ByteBuffer.allocateDirect(capacity * SLOT_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            frame = new ByteBuffer[] { header, slots };
+        }
+    }
+
     private String executeIpc(String requestJson) {
         try (Socket s = new Socket()) {
             s.connect(new InetSocketAddress("127.0.0.1", 9094), 500);
@@ -109,6 +292,7 @@ public class HFRustAdapter {
     private double parseDouble(String s){ try { return Double.parseDouble(s.trim()); } catch(Exception e){ return 0.0; } }
 
     public void shutdown() {
+        for (Scratch sc : scratches) closeQuietly(sc);
         if (ipcProcess != null) {
             ipcProcess.destroy();
         }
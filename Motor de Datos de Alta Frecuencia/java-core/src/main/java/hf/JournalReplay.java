@@ -0,0 +1,172 @@
+package hf;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+public class JournalReplay {
+    private final Path dir;
+    private final long tsUnitNanos;
+
+    public JournalReplay(Path dir) {
+        this(dir, 1_000_000L);
+    }
+
+    public JournalReplay(Path dir, long tsUnitNanos) {
+        this.dir = dir;
+        this.tsUnitNanos = Math.max(1, tsUnitNanos);
+    }
+
+    public long replay(HFEngine engine, boolean paced) {
+        SymbolTable target = engine.symbols();
+        Cursor[] cursors = open();
+        int[][] remap = new int[cursors.length][];
+        for (int i=0;i<cursors.length;i++) {
+            String[] names = cursors[i].names;
+            remap[i] = new int[names.length];
+            for (int id=0;id<names.length;id++) remap[i][id] = names[id] != null ? target.intern(names[id]) : -1;
+        }
+        long count = 0;
+        long firstTs = 0;
+        long startNanos = 0;
+        Cursor c;
+        while ((c = next(cursors)) != null) {
+            if (paced) {
+                if (count == 0) {
+                    firstTs = c.ts;
+                    startNanos = System.nanoTime();
+                } else {
+                    long due = startNanos + (c.ts - firstTs) * tsUnitNanos;
+                    long wait;
+                    while ((wait = due - System.nanoTime()) > 0) {
+                        if (wait > 100_000) LockSupport.parkNanos(wait - 50_000);
+                        else Thread.onSpinWait();
+                    }
+                }
+            }
+            int[] ids = remap[c.lane];
+            int symbolId = c.symbolId >= 0 && c.symbolId < ids.length ? ids[c.symbolId] : -1;
+            if (symbolId < 0) {
+                throw new IllegalStateException("symbol " + c.symbolId + " of lane " + c.lane + " is missing from " + EventJournal.symbolsPath(dir, c.lane));
+            }
+            while (!engine.offer(c.ts, symbolId, c.kind, c.price, c.qty)) {
+                Thread.onSpinWait();
+            }
+            count++;
+            c.advance();
+        }
+        return count;
+    }
+
+    public long replay(EventHandler handler) {
+        Cursor[] cursors = open();
+        long count = 0;
+        Cursor c;
+        while ((c = next(cursors)) != null) {
+            handler.onEvent(c.lane, c.ts, c.symbolId, c.kind, c.price, c.qty, c.price * c.qty);
+            count++;
+            c.advance();
+        }
+        return count;
+    }
+
+    public String[] symbols(int lane) {
+        return readSymbols(lane);
+    }
+
+    private static Cursor next(Cursor[] cursors) {
+        Cursor best = null;
+        for (Cursor c : cursors) {
+            if (c.valid && (best == null || c.ts < best.ts)) best = c;
+        }
+        return best;
+    }
+
+    private Cursor[] open() {
+        List<Cursor> out = new ArrayList<>();
+        for (int lane = 0; Files.exists(EventJournal.segmentPath(dir, lane, 0)); lane++) {
+            Cursor c = new Cursor(lane, readSymbols(lane));
+            c.advance();
+            out.add(c);
+        }
+        return out.toArray(new Cursor[0]);
+    }
+
+    private String[] readSymbols(int lane) {
+        Path p = EventJournal.symbolsPath(dir, lane);
+        String[] names = new String[0];
+        if (!Files.exists(p)) return names;
+        try {
+            for (String line : Files.readAllLines(p, StandardCharsets.UTF_8)) {
+                int comma = line.indexOf(',');
+                if (comma < 0) continue;
+                int id = Integer.parseInt(line.substring(0, comma));
+                if (id >= names.length) names = Arrays.copyOf(names, Math.max(id + 1, names.length * 2));
+                names[id] = line.substring(comma + 1);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return names;
+    }
+
+    private final class Cursor {
+        final int lane;
+        final String[] names;
+        int segment = -1;
+        MappedByteBuffer buf;
+        boolean valid;
+        long ts;
+        int symbolId;
+        int kind;
+        double price;
+        long qty;
+
+        Cursor(int lane, String[] names) {
+            this.lane = lane;
+            this.names = names;
+        }
+
+        void advance() {
+            while (true) {
+                if (buf != null && buf.remaining() >= EventJournal.RECORD_SIZE) {
+                    int p = buf.position();
+                    int flags = buf.getInt(p + 12);
+                    if ((flags & EventJournal.FLAG_VALID) != 0) {
+                        ts = buf.getLong(p);
+                        kind = (flags >>> EventJournal.KIND_SHIFT) & 0xff;
+                        symbolId = buf.getInt(p + 8);
+                        price = buf.getDouble(p + 16);
+                        qty = buf.getLong(p + 24);
+                        buf.position(p + EventJournal.RECORD_SIZE);
+                        valid = true;
+                        return;
+                    }
+                }
+                Path next = EventJournal.segmentPath(dir, lane, segment + 1);
+                if (!Files.exists(next)) {
+                    valid = false;
+                    buf = null;
+                    return;
+                }
+                segment++;
+                try (FileChannel ch = FileChannel.open(next, StandardOpenOption.READ)) {
+                    buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                    buf.order(ByteOrder.LITTLE_ENDIAN);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package hf;
+
+import java.util.concurrent.locks.LockSupport;
+
+class Lane {
+    private static final long CONFLATED = -2;
+
+    final int id;
+    private final Sequencer sequencer;
+    private final HFEngine.Storage storage;
+    private final HFEngine.Event[] ring;
+    private final long[] tsCol;
+    private final int[] symCol;
+    private final int[] kindCol;
+    private final double[] priceCol;
+    private final long[] qtyCol;
+    private final long[] offerCol;
+    private final HFRustAdapter adapter;
+    private HFRustAdapter.Batch batch;
+    private long[] batchOffer;
+    private volatile LatencyStats latency;
+    private OverflowPolicy policy = OverflowPolicy.REJECT;
+    private long blockTimeoutNanos;
+    private Conflation conflation;
+    private final Sequence dropped = new Sequence(0);
+    private final Sequence conflated = new Sequence(0);
+    private final Sequence processed = new Sequence(0);
+    private long count = 0;
+    private volatile double lastNotional = 0.0;
+    private volatile long lastTs = Long.MIN_VALUE;
+    private volatile boolean running = false;
+    private EventHandler[] handlers = new EventHandler[0];
+
+    Lane(int id, int capacity, HFEngine.Storage storage, WaitStrategy wait, HFRustAdapter adapter) {
+        this.id = id;
+        this.sequencer = new Sequencer(capacity, wait);
+        this.storage = storage;
+        this.adapter = adapter;
+        int size = sequencer.capacity();
+        if (storage == HFEngine.Storage.PRIMITIVE) {
+            this.ring = null;
+            this.tsCol = new long[size];
+            this.symCol = new int[size];
+            this.kindCol = new int[size];
+            this.priceCol = new double[size];
+            this.qtyCol = new long[size];
+            this.offerCol = new long[size];
+        } else {
+            this.ring = new HFEngine.Event[size];
+            for (int i=0;i<size;i++) ring[i] = new HFEngine.Event();
+            this.tsCol = null;
+            this.symCol = null;
+            this.kindCol = null;
+            this.priceCol = null;
+            this.qtyCol = null;
+            this.offerCol = null;
+        }
+    }
+
+    boolean offer(long ts, String symbol, int symbolId, int kind, double price, long qty) {
+        long now = latency != null ? System.nanoTime() : 0L;
+        if (conflation != null && conflation.pending(symbolId)) {
+            conflation.put(symbolId, ts, kind, price, qty, now, sequencer);
+            conflated.incrementAndGet();
+            return true;
+        }
+        long seq = sequencer.tryNext();
+        if (seq < 0) {
+            seq = overflow(ts, symbolId, kind, price, qty, now);
+            if (seq == CONFLATED) return true;
+            if (seq < 0) return false;
+        }
+        int h = sequencer.index(seq);
+        if (storage == HFEngine.Storage.PRIMITIVE) {
+            tsCol[h] = ts; symCol[h] = symbolId; kindCol[h] = kind; priceCol[h] = price; qtyCol[h] = qty; offerCol[h] = now;
+        } else {
+            HFEngine.Event e = ring[h];
+            e.ts = ts; e.symbol = symbol; e.symbolId = symbolId; e.kind = kind; e.price = price; e.qty = qty; e.offerNanos = now;
+        }
+        sequencer.publish(seq);
+        return true;
+    }
+
+    private long overflow(long ts, int symbolId, int kind, double price, long qty, long now) {
+        long seq;
+        switch (policy) {
+            case BLOCK: {
+                long deadline = System.nanoTime() + blockTimeoutNanos;
+                int spins = 0;
+                while ((seq = sequencer.tryNext()) < 0) {
+                    if (System.nanoTime() - deadline >= 0) {
+                        dropped.incrementAndGet();
+                        return -1;
+                    }
+                    if (++spins < 100) Thread.onSpinWait();
+                    else LockSupport.parkNanos(1_000);
+                }
+                return seq;
+            }
+            case DROP_OLDEST:
+                while ((seq = sequencer.tryNext()) < 0) {
+                    if (sequencer.tryEvict()) dropped.incrementAndGet();
+                    else Thread.onSpinWait();
+                }
+                return seq;
+            case DROP_NEWEST:
+                dropped.incrementAndGet();
+                return -1;
+            case CONFLATE:
+                conflation.put(symbolId, ts, kind, price, qty, now, sequencer);
+                conflated.incrementAndGet();
+                return CONFLATED;
+            default:
+                return -1;
+        }
+    }
+
+    void configure(OverflowPolicy policy, long blockTimeoutNanos, int maxSymbols) {
+        this.policy = policy;
+        this.blockTimeoutNanos = blockTimeoutNanos;
+        this.conflation = policy == OverflowPolicy.CONFLATE ? new Conflation(maxSymbols) : null;
+    }
+
+    void start(EventHandler[] handlers, int batchSize, LatencyStats latency) {
+        this.handlers = handlers;
+        this.batch = new HFRustAdapter.Batch(Math.max(1, batchSize));
+        this.batchOffer = new long[batch.capacity()];
+        this.latency = latency;
+        running = true;
+    }
+    void latency(LatencyStats latency) { this.latency = latency; }
+    void stop() { running = false; }
+
+    void consumeLoop() {
+        if (storage == HFEngine.Storage.PRIMITIVE) consumeBatches();
+        else consumeObjects();
+    }
+
+    private void consumeBatches() {
+        long next = sequencer.consumed() + 1;
+        HFRustAdapter.Batch b = batch;
+        long[] offered = batchOffer;
+        int max = b.capacity();
+        boolean evicting = policy == OverflowPolicy.DROP_OLDEST;
+        Conflation conf = conflation;
+        while (running) {
+            if (evicting) next = Math.max(next, sequencer.consumed() + 1);
+            long hi = sequencer.waitFor(next);
+            while (next <= hi) {
+                long end = Math.min(hi, next + max - 1);
+                b.clear();
+                for (long s = next; s <= end; s++) {
+                    int t = sequencer.index(s);
+                    offered[b.size] = offerCol[t];
+                    b.add(tsCol[t], symCol[t], kindCol[t], priceCol[t], qtyCol[t]);
+                }
+                if (evicting) {
+                    if (!sequencer.commit(next - 1, end)) {
+                        next = sequencer.consumed() + 1;
+                        break;
+                    }
+                } else {
+                    sequencer.release(end);
+                }
+                next = end + 1;
+                process(b, offered);
+            }
+            if (conf != null) {
+                b.clear();
+                if (conf.drain(next - 1, b, offered) > 0) process(b, offered);
+            }
+        }
+    }
+
+    private void process(HFRustAdapter.Batch b, long[] offered) {
+        EventHandler[] hs = handlers;
+        LatencyStats lat = latency;
+        long callStart = lat != null ? System.nanoTime() : 0L;
+        adapter.parseBatch(b);
+        if (lat != null) lat.recordAdapter(id, System.nanoTime() - callStart);
+        int n = b.size;
+        for (int i=0;i<n;i++) {
+            for (EventHandler h : hs) h.onEvent(id, b.ts[i], b.symbolId[i], b.kind[i], b.price[i], b.qty[i], b.notional[i]);
+        }
+        if (lat != null) {
+            long now = System.nanoTime();
+            for (int i=0;i<n;i++) if (offered[i] != 0) lat.recordQueue(id, b.symbolId[i], now - offered[i]);
+        }
+        count += n;
+        for (int i = n - 1; i >= 0; i--) {
+            if (EventKind.action(b.kind[i]) == EventKind.TRADE) {
+                lastNotional = b.notional[i];
+                break;
+            }
+        }
+        lastTs = b.ts[n - 1];
+        processed.set(count);
+    }
+
+    private void consumeObjects() {
+        long next = sequencer.consumed() + 1;
+        HFRustAdapter.Batch b = batch;
+        long[] offered = batchOffer;
+        int max = b.capacity();
+        while (running) {
+            long hi = sequencer.waitFor(next);
+            while (next <= hi) {
+                long end = Math.min(hi, next + max - 1);
+                b.clear();
+                for (long s = next; s <= end; s++) {
+                    HFEngine.Event e = ring[sequencer.index(s)];
+                    offered[b.size] = e.offerNanos;
+                    b.add(e.ts, e.symbolId, e.kind, e.price, e.qty);
+                }
+                sequencer.release(end);
+                next = end + 1;
+                process(b, offered);
+            }
+        }
+    }
+
+    long processed() { return processed.get(); }
+    long dropped() { return dropped.get(); }
+    long conflated() { return conflated.get(); }
+    double lastNotional() { return lastNotional; }
+    long lastTs() { return lastTs; }
+    int capacity() { return sequencer.capacity(); }
+    int backlog() { return (int) (sequencer.claimed() - sequencer.consumed()); }
+}
@@ -0,0 +1,80 @@
+package hf;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+public class LatencyHistogram {
+    private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int SUB_BITS = 6;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF = SUB_COUNT >> 1;
+    private static final int BUCKETS = SUB_COUNT + (64 - SUB_BITS) * HALF;
+
+    private final long[] counts = new long[BUCKETS];
+    private final Sequence total = new Sequence(0);
+    private long max = 0;
+    private long sum = 0;
+
+    static int bucketOf(long v) {
+        if (v < SUB_COUNT) return v < 0 ? 0 : (int) v;
+        int shift = (63 - Long.numberOfLeadingZeros(v)) - SUB_BITS + 1;
+        int top = (int) (v >>> shift);
+        return SUB_COUNT + (shift - 1) * HALF + (top - HALF);
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_COUNT) return bucket;
+        int shift = (bucket - SUB_COUNT) / HALF + 1;
+        long top = (bucket - SUB_COUNT) % HALF + HALF;
+        return ((top + 1) << shift) - 1;
+    }
+
+    public void record(long nanos) {
+        int b = bucketOf(nanos);
+        COUNTS.setOpaque(counts, b, (long) COUNTS.getOpaque(counts, b) + 1);
+        if (nanos > max) max = nanos;
+        sum += nanos;
+        total.set(total.get() + 1);
+    }
+
+    public long count() { return total.get(); }
+    public long max() {
+        total.get();
+        return max;
+    }
+
+    public double mean() {
+        long n = total.get();
+        return n == 0 ? 0.0 : (double) sum / n;
+    }
+
+    public long percentile(double p) {
+        long n = 0;
+        for (int i=0;i<BUCKETS;i++) n += (long) COUNTS.getOpaque(counts, i);
+        if (n == 0) return 0;
+        long rank = (long) Math.ceil(Math.min(100.0, Math.max(0.0, p)) / 100.0 * n);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i=0;i<BUCKETS;i++) {
+            seen += (long) COUNTS.getOpaque(counts, i);
+            if (seen >= rank) return Math.min(upperBound(i), max());
+        }
+        return max();
+    }
+
+    public void addTo(LatencyHistogram target) {
+        for (int i=0;i<BUCKETS;i++) {
+            long c = (long) COUNTS.getOpaque(counts, i);
+            if (c != 0) target.counts[i] += c;
+        }
+        long n = total.get();
+        target.sum += sum;
+        if (max > target.max) target.max = max;
+        target.total.set(target.total.get() + n);
+    }
+
+    public String toJson() {
+        return "{\"count\":" + count() + ",\"mean\":" + mean() + ",\"p50\":" + percentile(50) + ",\"p99\":" + percentile(99)
+                + ",\"p999\":" + percentile(99.9) + ",\"max\":" + max() + "}";
+    }
+}
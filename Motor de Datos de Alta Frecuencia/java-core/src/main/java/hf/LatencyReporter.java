@@ -0,0 +1,68 @@
+package hf;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class LatencyReporter implements AutoCloseable {
+    private final LatencyStats stats;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "hf-latency-reporter");
+        t.setDaemon(true);
+        return t;
+    });
+    private HttpServer server;
+
+    public LatencyReporter(LatencyStats stats) {
+        this.stats = stats;
+    }
+
+    public LatencyReporter dumpEvery(Path file, long periodMillis) {
+        timer.scheduleAtFixedRate(() -> {
+            try {
+                dump(file);
+            } catch (RuntimeException e) {
+                System.err.println("latency dump to " + file + " failed: " + e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    public void dump(Path file) {
+        try {
+            Files.writeString(file, stats.toJson() + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public LatencyReporter serve(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/stats", ex -> {
+            byte[] body = stats.toJson().getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "application/json");
+            ex.sendResponseHeaders(200, body.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+        return this;
+    }
+
+    public void close() {
+        timer.shutdownNow();
+        if (server != null) server.stop(0);
+    }
+}
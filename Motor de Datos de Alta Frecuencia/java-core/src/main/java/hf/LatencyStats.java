@@ -0,0 +1,76 @@
+package hf;
+
+public class LatencyStats {
+    private final SymbolTable symbols;
+    private final int classes;
+    private final LatencyHistogram[][] queue;
+    private final LatencyHistogram[] adapter;
+
+    public LatencyStats(int lanes, int symbolClasses, SymbolTable symbols) {
+        this.symbols = symbols;
+        this.classes = Math.max(1, symbolClasses);
+        this.queue = new LatencyHistogram[lanes][classes];
+        this.adapter = new LatencyHistogram[lanes];
+        for (int l=0;l<lanes;l++) {
+            for (int c=0;c<classes;c++) queue[l][c] = new LatencyHistogram();
+            adapter[l] = new LatencyHistogram();
+        }
+    }
+
+    void recordQueue(int lane, int symbolId, long nanos) {
+        int c = symbols.symbolClass(symbolId);
+        queue[lane][c < classes ? c : 0].record(nanos);
+    }
+
+    void recordAdapter(int lane, long nanos) {
+        adapter[lane].record(nanos);
+    }
+
+    public int lanes() { return adapter.length; }
+    public int symbolClasses() { return classes; }
+
+    public LatencyHistogram queue() {
+        LatencyHistogram all = new LatencyHistogram();
+        for (LatencyHistogram[] lane : queue) for (LatencyHistogram h : lane) h.addTo(all);
+        return all;
+    }
+
+    public LatencyHistogram queueByLane(int lane) {
+        LatencyHistogram all = new LatencyHistogram();
+        for (LatencyHistogram h : queue[lane]) h.addTo(all);
+        return all;
+    }
+
+    public LatencyHistogram queueByClass(int symbolClass) {
+        LatencyHistogram all = new LatencyHistogram();
+        for (LatencyHistogram[] lane : queue) lane[symbolClass].addTo(all);
+        return all;
+    }
+
+    public LatencyHistogram adapter() {
+        LatencyHistogram all = new LatencyHistogram();
+        for (LatencyHistogram h : adapter) h.addTo(all);
+        return all;
+    }
+
+    public LatencyHistogram adapterByLane(int lane) { return adapter[lane]; }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"ts\":").append(System.currentTimeMillis());
+        sb.append(",\"queue\":").append(queue().toJson());
+        sb.append(",\"adapter\":").append(adapter().toJson());
+        sb.append(",\"lanes\":[");
+        for (int l=0;l<adapter.length;l++) {
+            if (l>0) sb.append(",");
+            sb.append("{\"queue\":").append(queueByLane(l).toJson()).append(",\"adapter\":").append(adapter[l].toJson()).append("}");
+        }
+        sb.append("],\"classes\":[");
+        for (int c=0;c<classes;c++) {
+            if (c>0) sb.append(",");
+            sb.append(queueByClass(c).toJson());
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+}
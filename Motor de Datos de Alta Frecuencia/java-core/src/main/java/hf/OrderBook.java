@@ -0,0 +1,221 @@
+package hf;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+public class OrderBook implements EventHandler {
+    private static final VarHandle VERSION;
+    private static final VarHandle BOOKS = MethodHandles.arrayElementVarHandle(Book[].class);
+
+    static {
+        try {
+            VERSION = MethodHandles.lookup().findVarHandle(Book.class, "version", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public static class Depth {
+        public final double[] bidPrice;
+        public final long[] bidQty;
+        public final double[] askPrice;
+        public final long[] askQty;
+        public int bidLevels;
+        public int askLevels;
+        public double lastPrice;
+        public long lastQty;
+        public long ts;
+        public long updates;
+
+        public Depth(int levels) {
+            int n = Math.max(1, levels);
+            bidPrice = new double[n];
+            bidQty = new long[n];
+            askPrice = new double[n];
+            askQty = new long[n];
+        }
+
+        public int levels() { return bidPrice.length; }
+    }
+
+    private static final class Side {
+        long[] key = new long[16];
+        long[] qty = new long[16];
+        int size;
+
+        int find(long k) {
+            int n = size;
+            if (n > 0 && key[n - 1] == k) return n - 1;
+            return Arrays.binarySearch(key, 0, n, k);
+        }
+
+        void add(long k, long q, boolean replace) {
+            int i = find(k);
+            if (i >= 0) {
+                long v = replace ? q : qty[i] + q;
+                if (v <= 0) remove(i);
+                else qty[i] = v;
+                return;
+            }
+            if (q <= 0) return;
+            i = -i - 1;
+            if (size == key.length) {
+                key = Arrays.copyOf(key, size * 2);
+                qty = Arrays.copyOf(qty, size * 2);
+            }
+            System.arraycopy(key, i, key, i + 1, size - i);
+            System.arraycopy(qty, i, qty, i + 1, size - i);
+            key[i] = k;
+            qty[i] = q;
+            size++;
+        }
+
+        void reduce(long k, long q) {
+            int i = find(k);
+            if (i < 0) return;
+            long v = q <= 0 ? 0 : qty[i] - q;
+            if (v <= 0) remove(i);
+            else qty[i] = v;
+        }
+
+        private void remove(int i) {
+            System.arraycopy(key, i + 1, key, i, size - i - 1);
+            System.arraycopy(qty, i + 1, qty, i, size - i - 1);
+            size--;
+        }
+    }
+
+    private static final class Book {
+        long version;
+        final Side bids = new Side();
+        final Side asks = new Side();
+        double lastPrice;
+        long lastQty;
+        long ts;
+        long updates;
+    }
+
+    private final int maxSymbols;
+    private final double tickSize;
+    private final double ticksPerUnit;
+    private final Book[] books;
+
+    public OrderBook(int maxSymbols, double tickSize) {
+        if (!(tickSize > 0)) throw new IllegalArgumentException("tickSize must be positive");
+        this.maxSymbols = Math.max(1, maxSymbols);
+        this.tickSize = tickSize;
+        this.ticksPerUnit = 1.0 / tickSize;
+        this.books = new Book[this.maxSymbols];
+    }
+
+    public void onEvent(int lane, long ts, int s, double price, long qty, double notional) {
+        onEvent(lane, ts, s, EventKind.TRADE, price, qty, notional);
+    }
+
+    public void onEvent(int lane, long ts, int s, int kind, double price, long qty, double notional) {
+        if (s < 0 || s >= maxSymbols) return;
+        Book b = books[s];
+        if (b == null) {
+            b = new Book();
+            BOOKS.setRelease(books, s, b);
+        }
+        long v = b.version;
+        VERSION.setOpaque(b, v + 1);
+        VarHandle.storeStoreFence();
+
+        long ticks = Math.round(price * ticksPerUnit);
+        boolean ask = EventKind.isAsk(kind);
+        Side side = ask ? b.asks : b.bids;
+        long key = ask ? -ticks : ticks;
+        switch (EventKind.action(kind)) {
+            case EventKind.ADD:
+                side.add(key, qty, false);
+                break;
+            case EventKind.MODIFY:
+                side.add(key, qty, true);
+                break;
+            case EventKind.CANCEL:
+                side.reduce(key, qty);
+                break;
+            default:
+                b.lastPrice = price;
+                b.lastQty = qty;
+                side.reduce(key, qty);
+                break;
+        }
+        b.ts = ts;
+        b.updates++;
+
+        VERSION.setRelease(b, v + 2);
+    }
+
+    public boolean read(int s, Depth out) {
+        if (s < 0 || s >= maxSymbols) return false;
+        Book b = (Book) BOOKS.getAcquire(books, s);
+        if (b == null) {
+            out.bidLevels = out.askLevels = 0;
+            out.updates = 0;
+            return false;
+        }
+        while (true) {
+            long v1 = (long) VERSION.getAcquire(b);
+            if ((v1 & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            out.bidLevels = copy(b.bids, out.bidPrice, out.bidQty, 1);
+            out.askLevels = copy(b.asks, out.askPrice, out.askQty, -1);
+            out.lastPrice = b.lastPrice;
+            out.lastQty = b.lastQty;
+            out.ts = b.ts;
+            out.updates = b.updates;
+            VarHandle.loadLoadFence();
+            long v2 = (long) VERSION.getOpaque(b);
+            if (v1 == v2) break;
+        }
+        return out.updates > 0;
+    }
+
+    private int copy(Side side, double[] price, long[] qty, int sign) {
+        long[] k = side.key;
+        long[] q = side.qty;
+        int n = Math.min(side.size, Math.min(k.length, q.length));
+        int levels = Math.min(n, price.length);
+        for (int i=0;i<levels;i++) {
+            int j = n - 1 - i;
+            price[i] = sign * k[j] / ticksPerUnit;
+            qty[i] = q[j];
+        }
+        return levels;
+    }
+
+    public double bestBid(int s) { return best(s, false); }
+    public double bestAsk(int s) { return best(s, true); }
+
+    private double best(int s, boolean ask) {
+        if (s < 0 || s >= maxSymbols) return Double.NaN;
+        Book b = (Book) BOOKS.getAcquire(books, s);
+        if (b == null) return Double.NaN;
+        while (true) {
+            long v1 = (long) VERSION.getAcquire(b);
+            if ((v1 & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            Side side = ask ? b.asks : b.bids;
+            long[] k = side.key;
+            int n = Math.min(side.size, k.length);
+            double px = n > 0 ? (ask ? -k[n - 1] : k[n - 1]) / ticksPerUnit : Double.NaN;
+            VarHandle.loadLoadFence();
+            if ((long) VERSION.getOpaque(b) == v1) return px;
+        }
+    }
+
+    public double spread(int s) {
+        return bestAsk(s) - bestBid(s);
+    }
+
+    public double tickSize() { return tickSize; }
+    public int maxSymbols() { return maxSymbols; }
+}
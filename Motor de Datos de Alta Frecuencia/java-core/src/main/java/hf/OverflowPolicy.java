@@ -0,0 +1,9 @@
+package hf;
+
+public enum OverflowPolicy {
+    REJECT,
+    BLOCK,
+    DROP_NEWEST,
+    DROP_OLDEST,
+    CONFLATE
+}
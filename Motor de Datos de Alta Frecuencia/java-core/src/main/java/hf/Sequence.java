@@ -0,0 +1,45 @@
+package hf;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+class SequenceLhsPadding {
+    protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+class SequenceValue extends SequenceLhsPadding {
+    protected volatile long value;
+}
+
+class SequenceRhsPadding extends SequenceValue {
+    protected long p9, p10, p11, p12, p13, p14, p15;
+}
+
+public class Sequence extends SequenceRhsPadding {
+    private static final VarHandle VALUE;
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(SequenceValue.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public Sequence(long initial) {
+        VALUE.setRelease(this, initial);
+    }
+
+    public long get() { return value; }
+
+    public void set(long v) { VALUE.setRelease(this, v); }
+
+    public void setVolatile(long v) { value = v; }
+
+    public boolean compareAndSet(long expected, long v) {
+        return VALUE.compareAndSet(this, expected, v);
+    }
+
+    public long incrementAndGet() {
+        return (long) VALUE.getAndAdd(this, 1L) + 1L;
+    }
+}
@@ -0,0 +1,88 @@
+package hf;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+public class Sequencer {
+    private static final VarHandle AVAILABLE = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final int bufferSize;
+    private final int mask;
+    private final int indexShift;
+    private final WaitStrategy wait;
+    private final Sequence cursor = new Sequence(-1);
+    private final Sequence consumed = new Sequence(-1);
+    private final Sequence consumedCache = new Sequence(-1);
+    private final int[] available;
+
+    public Sequencer(int capacity, WaitStrategy wait) {
+        this.bufferSize = ceilPowerOfTwo(capacity);
+        this.mask = bufferSize - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(bufferSize);
+        this.wait = wait;
+        this.available = new int[bufferSize];
+        for (int i=0;i<bufferSize;i++) AVAILABLE.setRelease(available, i, -1);
+    }
+
+    static int ceilPowerOfTwo(int n) {
+        if (n <= 2) return 2;
+        if (n > (1 << 30)) throw new IllegalArgumentException("capacity too large: " + n);
+        return Integer.highestOneBit(n - 1) << 1;
+    }
+
+    public long tryNext() {
+        long current;
+        long next;
+        do {
+            current = cursor.get();
+            next = current + 1;
+            long wrap = next - bufferSize;
+            if (wrap > consumedCache.get()) {
+                long c = consumed.get();
+                consumedCache.set(c);
+                if (wrap > c) return -1;
+            }
+        } while (!cursor.compareAndSet(current, next));
+        return next;
+    }
+
+    public void publish(long sequence) {
+        AVAILABLE.setRelease(available, index(sequence), (int) (sequence >>> indexShift));
+        wait.signalAllWhenBlocking();
+    }
+
+    public boolean isAvailable(long sequence) {
+        return (int) AVAILABLE.getAcquire(available, index(sequence)) == (int) (sequence >>> indexShift);
+    }
+
+    public long highestPublished(long lowerBound, long availableSequence) {
+        for (long s = lowerBound; s <= availableSequence; s++) {
+            if (!isAvailable(s)) return s - 1;
+        }
+        return availableSequence;
+    }
+
+    public long waitFor(long sequence) {
+        long hi = wait.waitFor(sequence, cursor);
+        if (hi < sequence) return hi;
+        return highestPublished(sequence, hi);
+    }
+
+    public boolean tryEvict() {
+        long c = consumed.get();
+        if (c + 1 > cursor.get() || !isAvailable(c + 1)) return false;
+        return consumed.compareAndSet(c, c + 1);
+    }
+
+    public boolean commit(long expected, long sequence) {
+        return consumed.compareAndSet(expected, sequence);
+    }
+
+    public void release(long sequence) { consumed.set(sequence); }
+
+    public long consumed() { return consumed.get(); }
+    public long claimed() { return cursor.get(); }
+    public int index(long sequence) { return (int) sequence & mask; }
+    public int capacity() { return bufferSize; }
+    public int remaining() { return bufferSize - (int) (cursor.get() - consumed.get()); }
+}
@@ -0,0 +1,168 @@
+package hf;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+public class SymbolAnalytics implements EventHandler {
+    private static final VarHandle SEQ = MethodHandles.arrayElementVarHandle(long[].class);
+
+    public static class Snapshot {
+        public long count;
+        public double lastPrice;
+        public double vwap;
+        public long volume;
+        public double notional;
+        public long barStart;
+        public double open, high, low, close;
+        public long barVolume;
+        public double barNotional;
+        public long prevBarStart;
+        public double prevOpen, prevHigh, prevLow, prevClose;
+        public long prevBarVolume;
+        public long rollingVolume;
+        public double rollingNotional;
+        public double rollingVwap;
+    }
+
+    private final int maxSymbols;
+    private final long barWidth;
+    private final int rollingBars;
+    private final long[] seq;
+    private final long[] count;
+    private final double[] lastPrice;
+    private final long[] volume;
+    private final double[] notional;
+    private final long[] barIndex;
+    private final double[] open, high, low, close;
+    private final long[] barVolume;
+    private final double[] barNotional;
+    private final long[] prevBarIndex;
+    private final double[] prevOpen, prevHigh, prevLow, prevClose;
+    private final long[] prevBarVolume;
+    private final long[] bucketVolume;
+    private final double[] bucketNotional;
+    private final long[] rollingVolume;
+    private final double[] rollingNotional;
+
+    public SymbolAnalytics(int maxSymbols, long barWidth, int rollingBars) {
+        if (barWidth <= 0) throw new IllegalArgumentException("barWidth must be positive");
+        this.maxSymbols = Math.max(1, maxSymbols);
+        this.barWidth = barWidth;
+        this.rollingBars = Math.max(1, rollingBars);
+        int n = this.maxSymbols;
+        seq = new long[n];
+        count = new long[n];
+        lastPrice = new double[n];
+        volume = new long[n];
+        notional = new double[n];
+        barIndex = new long[n];
+        open = new double[n]; high = new double[n]; low = new double[n]; close = new double[n];
+        barVolume = new long[n];
+        barNotional = new double[n];
+        prevBarIndex = new long[n];
+        prevOpen = new double[n]; prevHigh = new double[n]; prevLow = new double[n]; prevClose = new double[n];
+        prevBarVolume = new long[n];
+        bucketVolume = new long[n * this.rollingBars];
+        bucketNotional = new double[n * this.rollingBars];
+        rollingVolume = new long[n];
+        rollingNotional = new double[n];
+        Arrays.fill(barIndex, Long.MIN_VALUE);
+        Arrays.fill(prevBarIndex, Long.MIN_VALUE);
+    }
+
+    public void onEvent(int lane, long ts, int s, int kind, double price, long qty, double value) {
+        if (EventKind.action(kind) != EventKind.TRADE) return;
+        onEvent(lane, ts, s, price, qty, value);
+    }
+
+    public void onEvent(int lane, long ts, int s, double price, long qty, double value) {
+        if (s < 0 || s >= maxSymbols) return;
+        long v = seq[s];
+        SEQ.setOpaque(seq, s, v + 1);
+        VarHandle.storeStoreFence();
+
+        long idx = Math.floorDiv(ts, barWidth);
+        long cur = barIndex[s];
+        if (cur == Long.MIN_VALUE) {
+            barIndex[s] = idx;
+            open[s] = high[s] = low[s] = price;
+        } else if (idx > cur) {
+            prevBarIndex[s] = cur;
+            prevOpen[s] = open[s]; prevHigh[s] = high[s]; prevLow[s] = low[s]; prevClose[s] = close[s];
+            prevBarVolume[s] = barVolume[s];
+            long steps = Math.min(idx - cur, rollingBars);
+            int base = s * rollingBars;
+            for (long k = 1; k <= steps; k++) {
+                int slot = base + (int) Math.floorMod(cur + k, (long) rollingBars);
+                rollingVolume[s] -= bucketVolume[slot];
+                rollingNotional[s] -= bucketNotional[slot];
+                bucketVolume[slot] = 0;
+                bucketNotional[slot] = 0.0;
+            }
+            barIndex[s] = idx;
+            open[s] = high[s] = low[s] = price;
+            barVolume[s] = 0;
+            barNotional[s] = 0.0;
+        } else {
+            if (price > high[s]) high[s] = price;
+            if (price < low[s]) low[s] = price;
+        }
+        close[s] = price;
+        barVolume[s] += qty;
+        barNotional[s] += value;
+        int slot = s * rollingBars + (int) Math.floorMod(barIndex[s], (long) rollingBars);
+        bucketVolume[slot] += qty;
+        bucketNotional[slot] += value;
+        rollingVolume[s] += qty;
+        rollingNotional[s] += value;
+        lastPrice[s] = price;
+        volume[s] += qty;
+        notional[s] += value;
+        count[s]++;
+
+        SEQ.setRelease(seq, s, v + 2);
+    }
+
+    public boolean read(int s, Snapshot out) {
+        if (s < 0 || s >= maxSymbols) return false;
+        while (true) {
+            long v1 = (long) SEQ.getAcquire(seq, s);
+            if ((v1 & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            out.count = count[s];
+            out.lastPrice = lastPrice[s];
+            out.volume = volume[s];
+            out.notional = notional[s];
+            long idx = barIndex[s];
+            out.barStart = idx == Long.MIN_VALUE ? 0 : idx * barWidth;
+            out.open = open[s]; out.high = high[s]; out.low = low[s]; out.close = close[s];
+            out.barVolume = barVolume[s];
+            out.barNotional = barNotional[s];
+            long prev = prevBarIndex[s];
+            out.prevBarStart = prev == Long.MIN_VALUE ? 0 : prev * barWidth;
+            out.prevOpen = prevOpen[s]; out.prevHigh = prevHigh[s]; out.prevLow = prevLow[s]; out.prevClose = prevClose[s];
+            out.prevBarVolume = prevBarVolume[s];
+            out.rollingVolume = rollingVolume[s];
+            out.rollingNotional = rollingNotional[s];
+            VarHandle.loadLoadFence();
+            long v2 = (long) SEQ.getOpaque(seq, s);
+            if (v1 == v2) break;
+        }
+        out.vwap = out.volume != 0 ? out.notional / out.volume : 0.0;
+        out.rollingVwap = out.rollingVolume != 0 ? out.rollingNotional / out.rollingVolume : 0.0;
+        return out.count > 0;
+    }
+
+    public double vwap(int s) {
+        Snapshot snap = new Snapshot();
+        read(s, snap);
+        return snap.vwap;
+    }
+
+    public long barWidth() { return barWidth; }
+    public int rollingBars() { return rollingBars; }
+    public int maxSymbols() { return maxSymbols; }
+}
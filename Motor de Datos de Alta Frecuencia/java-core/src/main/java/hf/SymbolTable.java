@@ -0,0 +1,53 @@
+package hf;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+public class SymbolTable {
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final String[] names;
+    private final byte[] classes;
+    private volatile int size = 0;
+
+    public SymbolTable(int capacity) {
+        this.names = new String[Math.max(1, capacity)];
+        this.classes = new byte[names.length];
+    }
+
+    public int intern(String symbol) {
+        Integer id = ids.get(symbol);
+        if (id != null) return id;
+        return register(symbol);
+    }
+
+    public int idOf(String symbol) {
+        Integer id = ids.get(symbol);
+        return id != null ? id : -1;
+    }
+
+    private synchronized int register(String symbol) {
+        Integer id = ids.get(symbol);
+        if (id != null) return id;
+        int next = size;
+        if (next == names.length) throw new IllegalStateException("symbol table full: " + names.length);
+        names[next] = symbol;
+        ids.put(symbol, next);
+        size = next + 1;
+        return next;
+    }
+
+    public String name(int id) {
+        return id >= 0 && id < size ? names[id] : null;
+    }
+
+    public void setSymbolClass(int id, int symbolClass) {
+        if (symbolClass < 0 || symbolClass > Byte.MAX_VALUE) throw new IllegalArgumentException("symbol class out of range: " + symbolClass);
+        classes[id] = (byte) symbolClass;
+    }
+
+    public int symbolClass(int id) {
+        return id >= 0 && id < classes.length ? classes[id] : 0;
+    }
+
+    public int size() { return size; }
+    public int capacity() { return names.length; }
+}
@@ -0,0 +1,429 @@
+package hf;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+public class TickStore implements EventHandler {
+    private static final VarHandle SEQ = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle SERIES = MethodHandles.arrayElementVarHandle(Series[].class);
+    static final int BLOCK_TICKS = 1024;
+
+    public static class Range {
+        public long[] ts = new long[64];
+        public int[] kind = new int[64];
+        public double[] price = new double[64];
+        public long[] qty = new long[64];
+        public int size;
+
+        void add(long t, int k, double p, long q) {
+            if (size == ts.length) {
+                int n = size * 2;
+                ts = Arrays.copyOf(ts, n);
+                kind = Arrays.copyOf(kind, n);
+                price = Arrays.copyOf(price, n);
+                qty = Arrays.copyOf(qty, n);
+            }
+            ts[size] = t; kind[size] = k; price[size] = p; qty[size] = q;
+            size++;
+        }
+
+        public void clear() { size = 0; }
+    }
+
+    public static class Bars {
+        public long[] start = new long[16];
+        public double[] open = new double[16];
+        public double[] high = new double[16];
+        public double[] low = new double[16];
+        public double[] close = new double[16];
+        public long[] volume = new long[16];
+        public double[] notional = new double[16];
+        public int size;
+
+        void add(long t, double price, long qty, double value) {
+            if (size == start.length) grow(size * 2);
+            start[size] = t;
+            open[size] = high[size] = low[size] = close[size] = price;
+            volume[size] = qty;
+            notional[size] = value;
+            size++;
+        }
+
+        void update(double price, long qty, double value) {
+            int i = size - 1;
+            if (price > high[i]) high[i] = price;
+            if (price < low[i]) low[i] = price;
+            close[i] = price;
+            volume[i] += qty;
+            notional[i] += value;
+        }
+
+        void copy(long t, double o, double h, double l, double c, long v, double value) {
+            if (size == start.length) grow(size * 2);
+            start[size] = t;
+            open[size] = o; high[size] = h; low[size] = l; close[size] = c;
+            volume[size] = v;
+            notional[size] = value;
+            size++;
+        }
+
+        private void grow(int n) {
+            start = Arrays.copyOf(start, n);
+            open = Arrays.copyOf(open, n);
+            high = Arrays.copyOf(high, n);
+            low = Arrays.copyOf(low, n);
+            close = Arrays.copyOf(close, n);
+            volume = Arrays.copyOf(volume, n);
+            notional = Arrays.copyOf(notional, n);
+        }
+
+        public double vwap(int i) { return volume[i] != 0 ? notional[i] / volume[i] : 0.0; }
+        public void clear() { size = 0; }
+    }
+
+    static final class BitWriter {
+        volatile long[] words = new long[8];
+        long bits;
+
+        void write(long value, int n) {
+            int w = (int) (bits >>> 6);
+            int off = (int) (bits & 63);
+            long[] ws = words;
+            if (w + 1 >= ws.length) words = ws = Arrays.copyOf(ws, ws.length * 2);
+            long v = n == 64 ? value : value & ((1L << n) - 1);
+            ws[w] |= v << off;
+            if (off + n > 64) ws[w + 1] |= v >>> (64 - off);
+            bits += n;
+        }
+
+        void trim() {
+            words = Arrays.copyOf(words, (int) ((bits + 63) >>> 6) + 1);
+        }
+    }
+
+    static final class BitReader {
+        private long[] words;
+        private long bits;
+
+        void reset(long[] words) {
+            this.words = words;
+            this.bits = 0;
+        }
+
+        long read(int n) {
+            int w = (int) (bits >>> 6);
+            int off = (int) (bits & 63);
+            long v = words[w] >>> off;
+            if (off + n > 64) v |= words[w + 1] << (64 - off);
+            bits += n;
+            return n == 64 ? v : v & ((1L << n) - 1);
+        }
+
+        boolean bit() { return read(1) != 0; }
+    }
+
+    static final class Block {
+        final BitWriter out = new BitWriter();
+        volatile int count;
+        long minTs = Long.MAX_VALUE;
+        long maxTs = Long.MIN_VALUE;
+        long prevTs;
+        long prevDelta;
+        long prevPrice;
+        int prevLeading = -1;
+        int prevTrailing;
+        long prevQty;
+        int prevKind;
+
+        void append(long t, int k, double p, long q) {
+            BitWriter o = out;
+            long bitsOf = Double.doubleToRawLongBits(p);
+            int n = count;
+            if (n == 0) {
+                o.write(t, 64);
+                o.write(bitsOf, 64);
+                o.write(q, 64);
+                o.write(k, 8);
+            } else {
+                long delta = t - prevTs;
+                writeTs(o, delta - prevDelta);
+                prevDelta = delta;
+                writePrice(o, bitsOf ^ prevPrice);
+                writeVarying(o, zigzag(q - prevQty));
+                if (k == prevKind) {
+                    o.write(0, 1);
+                } else {
+                    o.write(1, 1);
+                    o.write(k, 8);
+                }
+            }
+            prevTs = t;
+            prevPrice = bitsOf;
+            prevQty = q;
+            prevKind = k;
+            if (t < minTs) minTs = t;
+            if (t > maxTs) maxTs = t;
+            count = n + 1;
+        }
+
+        private static void writeTs(BitWriter o, long dod) {
+            long z = zigzag(dod);
+            if (z == 0) {
+                o.write(0, 1);
+            } else if (z < (1L << 7)) {
+                o.write(0b01, 2);
+                o.write(z, 7);
+            } else if (z < (1L << 9)) {
+                o.write(0b011, 3);
+                o.write(z, 9);
+            } else if (z < (1L << 12)) {
+                o.write(0b0111, 4);
+                o.write(z, 12);
+            } else {
+                o.write(0b1111, 4);
+                o.write(z, 64);
+            }
+        }
+
+        private void writePrice(BitWriter o, long xor) {
+            if (xor == 0) {
+                o.write(0, 1);
+                return;
+            }
+            int leading = Long.numberOfLeadingZeros(xor);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+                o.write(0b01, 2);
+                o.write(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+            } else {
+                int len = 64 - leading - trailing;
+                o.write(0b11, 2);
+                o.write(leading, 6);
+                o.write(len - 1, 6);
+                o.write(xor >>> trailing, len);
+                prevLeading = leading;
+                prevTrailing = trailing;
+            }
+        }
+
+        private static void writeVarying(BitWriter o, long z) {
+            if (z == 0) {
+                o.write(0, 1);
+            } else if (z < (1L << 8)) {
+                o.write(0b01, 2);
+                o.write(z, 8);
+            } else if (z < (1L << 16)) {
+                o.write(0b011, 3);
+                o.write(z, 16);
+            } else if (z < (1L << 32)) {
+                o.write(0b0111, 4);
+                o.write(z, 32);
+            } else {
+                o.write(0b1111, 4);
+                o.write(z, 64);
+            }
+        }
+
+        int decode(BitReader in, int n, long from, long to, Range out) {
+            if (n == 0) return 0;
+            long t = in.read(64);
+            long price = in.read(64);
+            long q = in.read(64);
+            int k = (int) in.read(8);
+            long delta = 0;
+            int leading = 0;
+            int trailing = 0;
+            int added = 0;
+            for (int i=0;;) {
+                if (t >= from && t < to) {
+                    out.add(t, k, Double.longBitsToDouble(price), q);
+                    added++;
+                }
+                if (++i == n) break;
+                delta += unzigzag(readTs(in));
+                t += delta;
+                if (in.bit()) {
+                    if (in.bit()) {
+                        leading = (int) in.read(6);
+                        int len = (int) in.read(6) + 1;
+                        trailing = 64 - leading - len;
+                        price ^= in.read(len) << trailing;
+                    } else {
+                        price ^= in.read(64 - leading - trailing) << trailing;
+                    }
+                }
+                q += unzigzag(readVarying(in));
+                if (in.bit()) k = (int) in.read(8);
+            }
+            return added;
+        }
+
+        long[] words() { return out.words; }
+
+        private static long readTs(BitReader in) {
+            if (!in.bit()) return 0;
+            if (!in.bit()) return in.read(7);
+            if (!in.bit()) return in.read(9);
+            if (!in.bit()) return in.read(12);
+            return in.read(64);
+        }
+
+        private static long readVarying(BitReader in) {
+            if (!in.bit()) return 0;
+            if (!in.bit()) return in.read(8);
+            if (!in.bit()) return in.read(16);
+            if (!in.bit()) return in.read(32);
+            return in.read(64);
+        }
+
+        long bytes() { return (long) out.words.length * 8 + 64; }
+    }
+
+    static long zigzag(long v) { return (v << 1) ^ (v >> 63); }
+    static long unzigzag(long z) { return (z >>> 1) ^ -(z & 1); }
+
+    static final class Series {
+        Block[] blocks = new Block[4];
+        volatile int blockCount;
+        Bars[] tiers;
+    }
+
+    private final int maxSymbols;
+    private final long[] tierWidths;
+    private final Series[] series;
+    private final long[] seq;
+    private final ThreadLocal<BitReader> readers = ThreadLocal.withInitial(BitReader::new);
+
+    public TickStore(int maxSymbols, long... tierWidths) {
+        for (long w : tierWidths) {
+            if (w <= 0) throw new IllegalArgumentException("tier width must be positive: " + w);
+        }
+        this.maxSymbols = Math.max(1, maxSymbols);
+        this.tierWidths = tierWidths.clone();
+        this.series = new Series[this.maxSymbols];
+        this.seq = new long[this.maxSymbols];
+    }
+
+    public void onEvent(int lane, long ts, int s, double price, long qty, double notional) {
+        onEvent(lane, ts, s, EventKind.TRADE, price, qty, notional);
+    }
+
+    public void onEvent(int lane, long ts, int s, int kind, double price, long qty, double notional) {
+        if (s < 0 || s >= maxSymbols) return;
+        Series sr = series[s];
+        if (sr == null) {
+            sr = new Series();
+            sr.tiers = new Bars[tierWidths.length];
+            for (int i=0;i<tierWidths.length;i++) sr.tiers[i] = new Bars();
+            sr.blocks[0] = new Block();
+            sr.blockCount = 1;
+            SERIES.setRelease(series, s, sr);
+        }
+        int nb = sr.blockCount;
+        Block b = sr.blocks[nb - 1];
+        if (b.count == BLOCK_TICKS) {
+            b.out.trim();
+            if (nb == sr.blocks.length) sr.blocks = Arrays.copyOf(sr.blocks, nb * 2);
+            b = new Block();
+            sr.blocks[nb] = b;
+            sr.blockCount = nb + 1;
+        }
+        b.append(ts, kind, price, qty);
+
+        if (EventKind.action(kind) != EventKind.TRADE || tierWidths.length == 0) return;
+        long v = seq[s];
+        SEQ.setOpaque(seq, s, v + 1);
+        VarHandle.storeStoreFence();
+        for (int i=0;i<tierWidths.length;i++) {
+            Bars bars = sr.tiers[i];
+            long start = Math.floorDiv(ts, tierWidths[i]) * tierWidths[i];
+            if (bars.size > 0 && bars.start[bars.size - 1] == start) bars.update(price, qty, notional);
+            else if (bars.size == 0 || bars.start[bars.size - 1] < start) bars.add(start, price, qty, notional);
+        }
+        SEQ.setRelease(seq, s, v + 2);
+    }
+
+    public int query(int s, long from, long to, Range out) {
+        out.clear();
+        Series sr = series(s);
+        if (sr == null) return 0;
+        BitReader in = readers.get();
+        int nb = sr.blockCount;
+        Block[] blocks = sr.blocks;
+        int added = 0;
+        for (int i=0;i<nb;i++) {
+            Block b = blocks[i];
+            int n = b.count;
+            if (n == 0 || b.maxTs < from || b.minTs >= to) continue;
+            in.reset(b.words());
+            added += b.decode(in, n, from, to, out);
+        }
+        return added;
+    }
+
+    public int bars(int s, int tier, long from, long to, Bars out) {
+        out.clear();
+        Series sr = series(s);
+        if (sr == null) return 0;
+        Bars src = sr.tiers[tier];
+        while (true) {
+            long v1 = (long) SEQ.getAcquire(seq, s);
+            if ((v1 & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            out.clear();
+            long[] starts = src.start, volume = src.volume;
+            double[] open = src.open, high = src.high, low = src.low, close = src.close, notional = src.notional;
+            int n = Math.min(src.size, Math.min(starts.length, volume.length));
+            n = Math.min(n, Math.min(Math.min(open.length, high.length), Math.min(low.length, Math.min(close.length, notional.length))));
+            int i = lowerBound(starts, n, from);
+            for (; i < n && starts[i] < to; i++) out.copy(starts[i], open[i], high[i], low[i], close[i], volume[i], notional[i]);
+            VarHandle.loadLoadFence();
+            if ((long) SEQ.getOpaque(seq, s) == v1) return out.size;
+        }
+    }
+
+    private static int lowerBound(long[] a, int n, long key) {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private Series series(int s) {
+        if (s < 0 || s >= maxSymbols) return null;
+        return (Series) SERIES.getAcquire(series, s);
+    }
+
+    public long tickCount() {
+        long total = 0;
+        for (int s=0;s<maxSymbols;s++) {
+            Series sr = series(s);
+            if (sr == null) continue;
+            int nb = sr.blockCount;
+            for (int i=0;i<nb;i++) total += sr.blocks[i].count;
+        }
+        return total;
+    }
+
+    public long compressedBytes() {
+        long total = 0;
+        for (int s=0;s<maxSymbols;s++) {
+            Series sr = series(s);
+            if (sr == null) continue;
+            int nb = sr.blockCount;
+            for (int i=0;i<nb;i++) total += sr.blocks[i].bytes();
+        }
+        return total;
+    }
+
+    public long tierWidth(int tier) { return tierWidths[tier]; }
+    public int tiers() { return tierWidths.length; }
+    public int maxSymbols() { return maxSymbols; }
+}
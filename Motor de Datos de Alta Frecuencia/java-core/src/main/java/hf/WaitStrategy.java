@@ -0,0 +1,115 @@
+package hf;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+public interface WaitStrategy {
+    long waitFor(long sequence, Sequence cursor);
+
+    default void signalAllWhenBlocking() {}
+
+    default WaitStrategy copy() { return this; }
+
+    static WaitStrategy busySpin() { return new BusySpin(); }
+    static WaitStrategy yielding() { return new Yielding(); }
+    static WaitStrategy parking(long parkNanos) { return new Parking(parkNanos); }
+    static WaitStrategy blocking() { return new Blocking(); }
+
+    static WaitStrategy of(String name) {
+        switch (name.toLowerCase()) {
+            case "busy": case "busy-spin": return busySpin();
+            case "yield": case "yielding": return yielding();
+            case "park": case "parking": return parking(50_000);
+            case "block": case "blocking": return blocking();
+            default: throw new IllegalArgumentException("unknown wait strategy: " + name);
+        }
+    }
+
+    final class BusySpin implements WaitStrategy {
+        public long waitFor(long sequence, Sequence cursor) {
+            long available;
+            int spins = 1024;
+            while ((available = cursor.get()) < sequence && --spins > 0) {
+                Thread.onSpinWait();
+            }
+            return available;
+        }
+    }
+
+    final class Yielding implements WaitStrategy {
+        public long waitFor(long sequence, Sequence cursor) {
+            long available;
+            int spins = 100;
+            while ((available = cursor.get()) < sequence) {
+                if (--spins > 0) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                    return cursor.get();
+                }
+            }
+            return available;
+        }
+    }
+
+    final class Parking implements WaitStrategy {
+        private final long parkNanos;
+        public Parking(long parkNanos) { this.parkNanos = Math.max(1, parkNanos); }
+        public long waitFor(long sequence, Sequence cursor) {
+            long available;
+            int spins = 100;
+            while ((available = cursor.get()) < sequence) {
+                if (--spins > 0) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(parkNanos);
+                    return cursor.get();
+                }
+            }
+            return available;
+        }
+    }
+
+    final class Blocking implements WaitStrategy {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition published = lock.newCondition();
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        public WaitStrategy copy() { return new Blocking(); }
+
+        public long waitFor(long sequence, Sequence cursor) {
+            long available = cursor.get();
+            if (available >= sequence) return available;
+            lock.lock();
+            try {
+                waiters.incrementAndGet();
+                try {
+                    while ((available = cursor.get()) < sequence) {
+                        if (!published.await(1, TimeUnit.MILLISECONDS)) return cursor.get();
+                    }
+                } finally {
+                    waiters.decrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return cursor.get();
+            } finally {
+                lock.unlock();
+            }
+            return available;
+        }
+
+        public void signalAllWhenBlocking() {
+            if (waiters.get() == 0) return;
+            lock.lock();
+            try {
+                published.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
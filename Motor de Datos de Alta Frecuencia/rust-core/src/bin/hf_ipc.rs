@@ -1,16 +1,51 @@
-use std::io::{BufRead, BufReader, Write};
+use std::io::{BufRead, BufReader, Read, Write};
 use std::net::{TcpListener, TcpStream};
 
-fn handle(mut stream: TcpStream) {
-    let reader = BufReader::new(stream.try_clone().unwrap());
-    for line in reader.lines() {
-        if let Ok(req) = line {
-            let mut out = hf_core::core::process_request(&req);
-            out = hf_core::stamp_mode(out, "IPC");
-            let _ = writeln!(stream, "{}", out);
-        } else {
+fn respond(stream: &mut TcpStream, req: &str) -> bool {
+    let mut out = hf_core::core::process_request(req);
+    out = hf_core::stamp_mode(out, "IPC");
+    writeln!(stream, "{}", out).is_ok()
+}
+
+fn handle_binary(mut reader: BufReader<TcpStream>, mut stream: TcpStream) {
+    let mut header = [0u8; 4];
+    let mut buf: Vec<u8> = Vec::new();
+    while reader.read_exact(&mut header).is_ok() {
+        let count = u32::from_le_bytes(header) as usize;
+        buf.resize(count * hf_core::core::SLOT_SIZE, 0);
+        if reader.read_exact(&mut buf).is_err() {
             break;
         }
+        hf_core::core::enrich_slots(&mut buf, count);
+        if stream.write_all(&buf).is_err() {
+            break;
+        }
+    }
+    let _ = stream.shutdown(std::net::Shutdown::Both);
+}
+
+fn handle(mut stream: TcpStream) {
+    let _ = stream.set_nodelay(true);
+    let mut reader = BufReader::new(stream.try_clone().unwrap());
+    let mut first = String::new();
+    if reader.read_line(&mut first).unwrap_or(0) == 0 {
+        return;
+    }
+    let first = first.trim_end();
+    if first == "BIN" {
+        handle_binary(reader, stream);
+        return;
+    }
+    if respond(&mut stream, first) {
+        for line in reader.lines() {
+            if let Ok(req) = line {
+                if !respond(&mut stream, &req) {
+                    break;
+                }
+            } else {
+                break;
+            }
+        }
     }
     let _ = stream.shutdown(std::net::Shutdown::Both);
 }
@@ -23,4 +58,3 @@ fn main() {
         }
     }
 }
-
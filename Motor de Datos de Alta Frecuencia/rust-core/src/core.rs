@@ -36,6 +36,19 @@ pub fn process_request(input: &str) -> String {
     }
 }
 
+pub const SLOT_SIZE: usize = 40;
+
+pub fn enrich_slots(buf: &mut [u8], count: usize) -> usize {
+    let n = count.min(buf.len() / SLOT_SIZE);
+    for slot in buf.chunks_exact_mut(SLOT_SIZE).take(n) {
+        let price = f64::from_le_bytes(slot[16..24].try_into().unwrap());
+        let qty = i64::from_le_bytes(slot[24..32].try_into().unwrap());
+        let notional = price * (qty as f64);
+        slot[32..40].copy_from_slice(&notional.to_le_bytes());
+    }
+    n
+}
+
 #[derive(Serialize)]
 struct Metrics {
     ts: u64,
@@ -3,8 +3,8 @@ pub mod core;
 use std::ffi::{CStr, CString};
 use std::os::raw::c_char;
 
-use jni::objects::{JClass, JString};
-use jni::sys::jstring;
+use jni::objects::{JByteBuffer, JClass, JString};
+use jni::sys::{jint, jstring};
 use jni::JNIEnv;
 
 #[no_mangle]
@@ -44,6 +44,25 @@ pub extern "system" fn Java_hf_HFRustAdapter_hfExecuteJNI(
     j_out.into_raw()
 }
 
+#[no_mangle]
+pub extern "system" fn Java_hf_HFRustAdapter_hfEnrichDirect(
+    env: JNIEnv,
+    _class: JClass,
+    slots: JByteBuffer,
+    count: jint,
+) -> jint {
+    let ptr = match env.get_direct_buffer_address(&slots) {
+        Ok(p) if !p.is_null() => p,
+        _ => return -1,
+    };
+    let cap = match env.get_direct_buffer_capacity(&slots) {
+        Ok(c) => c,
+        Err(_) => return -1,
+    };
+    let buf = unsafe { std::slice::from_raw_parts_mut(ptr, cap) };
+    core::enrich_slots(buf, count.max(0) as usize) as jint
+}
+
 pub fn stamp_mode(mut json: String, mode: &str) -> String {
     if let Ok(mut v) = serde_json::from_str::<serde_json::Value>(&json) {
         if let Some(obj) = v.as_object_mut() {
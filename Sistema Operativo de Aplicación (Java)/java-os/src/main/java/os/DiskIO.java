@@ -0,0 +1,244 @@
+package os;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+final class DiskIO implements AutoCloseable {
+    static final int MAX_BATCH = 1024;
+
+    static final class Request {
+        final long id;
+        final String pid;
+        final boolean write;
+        final String file;
+        final long offset;
+        final byte[] data;
+        final int length;
+        int bytes;
+        byte[] result;
+        Throwable error;
+        boolean completed;
+
+        Request(long id, String pid, boolean write, String file, long offset, byte[] data, int length) {
+            this.id = id;
+            this.pid = pid;
+            this.write = write;
+            this.file = file;
+            this.offset = offset;
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    interface Completion {
+        void complete(Request r);
+    }
+
+    private final Path dir;
+    private final boolean durable;
+    private final long lingerNanos;
+    private final Completion completion;
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Map<String, FileChannel> files = new HashMap<>();
+    private final Map<String, Long> ends = new HashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder gathered = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    DiskIO(Path dir, boolean durable, long lingerNanos, Completion completion) {
+        this.dir = dir;
+        this.durable = durable;
+        this.lingerNanos = Math.max(0, lingerNanos);
+        this.completion = completion;
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.worker = new Thread(this::loop, "os-disk-io");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    static String checkName(String file) {
+        if (file == null || file.isEmpty() || file.startsWith(".")) throw new IllegalArgumentException("invalid file name: " + file);
+        for (int i=0;i<file.length();i++) {
+            char c = file.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '.' || c == '_' || c == '-')) throw new IllegalArgumentException("invalid file name: " + file);
+        }
+        return file;
+    }
+
+    long write(String pid, String file, long offset, byte[] data) {
+        return submit(new Request(ids.incrementAndGet(), pid, true, checkName(file), offset, data, data.length));
+    }
+
+    long read(String pid, String file, long offset, int length) {
+        if (offset < 0 || length < 0) throw new IllegalArgumentException("invalid read range");
+        return submit(new Request(ids.incrementAndGet(), pid, false, checkName(file), offset, null, length));
+    }
+
+    private long submit(Request r) {
+        if (!running) throw new IllegalStateException("disk closed");
+        queue.add(r);
+        return r.id;
+    }
+
+    private void loop() {
+        List<Request> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Request first = queue.poll(50, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                if (lingerNanos > 0 && queue.size() < MAX_BATCH) {
+                    long deadline = System.nanoTime() + lingerNanos;
+                    long left;
+                    while (batch.size() < MAX_BATCH && (left = deadline - System.nanoTime()) > 0) {
+                        Request r = queue.poll(left, TimeUnit.NANOSECONDS);
+                        if (r == null) break;
+                        batch.add(r);
+                    }
+                }
+                queue.drainTo(batch, MAX_BATCH - batch.size());
+            } catch (InterruptedException e) {
+                if (!running) continue;
+                Thread.currentThread().interrupt();
+                break;
+            }
+            try {
+                process(batch);
+            } catch (Throwable t) {
+                for (Request r : batch) {
+                    if (r.error == null) r.error = t;
+                    r.result = null;
+                    complete(r);
+                }
+            }
+            batch.clear();
+        }
+        for (FileChannel ch : files.values()) {
+            try {
+                ch.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void process(List<Request> batch) {
+        batches.increment();
+        requests.add(batch.size());
+        Map<String, FileChannel> dirty = new HashMap<>();
+        int i = 0;
+        while (i < batch.size()) {
+            Request r = batch.get(i);
+            try {
+                FileChannel ch = channel(r.file);
+                if (!r.write) {
+                    ByteBuffer buf = ByteBuffer.allocate(r.length);
+                    long pos = r.offset;
+                    while (buf.hasRemaining()) {
+                        int n = ch.read(buf, pos);
+                        if (n < 0) break;
+                        pos += n;
+                    }
+                    r.result = buf.flip().remaining() == r.length ? buf.array() : Arrays.copyOf(buf.array(), buf.remaining());
+                    r.bytes = r.result.length;
+                    i++;
+                    continue;
+                }
+                long fileEnd = ends.get(r.file);
+                long start = r.offset < 0 ? fileEnd : r.offset;
+                long end = start + r.length;
+                int j = i + 1;
+                while (j < batch.size()) {
+                    Request n = batch.get(j);
+                    if (!n.write || !n.file.equals(r.file)) break;
+                    if (n.offset < 0 ? end < fileEnd : n.offset != end) break;
+                    end += n.length;
+                    j++;
+                }
+                ByteBuffer[] bufs = new ByteBuffer[j - i];
+                for (int k=i;k<j;k++) bufs[k - i] = ByteBuffer.wrap(batch.get(k).data);
+                ch.position(start);
+                long left = end - start;
+                while (left > 0) left -= ch.write(bufs);
+                if (end > ends.get(r.file)) ends.put(r.file, end);
+                for (int k=i;k<j;k++) batch.get(k).bytes = batch.get(k).length;
+                if (j - i > 1) gathered.add(j - i - 1);
+                dirty.put(r.file, ch);
+                i = j;
+            } catch (IOException e) {
+                r.error = e;
+                i++;
+            }
+        }
+        if (durable) {
+            for (Map.Entry<String, FileChannel> d : dirty.entrySet()) {
+                try {
+                    d.getValue().force(false);
+                    syncs.increment();
+                } catch (IOException e) {
+                    for (Request r : batch) if (r.write && r.file.equals(d.getKey()) && r.error == null) r.error = e;
+                }
+            }
+        }
+        for (Request r : batch) complete(r);
+    }
+
+    private void complete(Request r) {
+        if (r.completed) return;
+        r.completed = true;
+        try {
+            completion.complete(r);
+        } catch (Throwable t) {
+            r.error = t;
+            r.result = null;
+            try {
+                completion.complete(r);
+            } catch (Throwable ignored) {
+            }
+        }
+    }
+
+    private FileChannel channel(String file) throws IOException {
+        FileChannel ch = files.get(file);
+        if (ch == null) {
+            ch = FileChannel.open(dir.resolve(file), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            files.put(file, ch);
+            ends.put(file, ch.size());
+        }
+        return ch;
+    }
+
+    String stats() {
+        return "{\"batches\":" + batches.sum() + ",\"requests\":" + requests.sum() + ",\"gathered\":" + gathered.sum() + ",\"syncs\":" + syncs.sum() + ",\"queued\":" + queue.size() + "}";
+    }
+
+    public void close() {
+        running = false;
+        try {
+            worker.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,8 +1,13 @@
 package os;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Kernel {
     public enum State { NEW, READY, RUNNING, WAITING, TERMINATED }
@@ -13,45 +18,347 @@ public class Kernel {
         void onStart(Kernel k);
         void onTick(Kernel k);
         void onEvent(Event e, Kernel k);
+        default int priority(){ return 0; }
+        default void onEvents(String type, List<Event> batch, Kernel k){
+            for (Event e : batch) onEvent(e, k);
+        }
     }
 
     public static class Event {
         public final String type;
         public final String data;
-        public Event(String type, String data){ this.type=type; this.data=data; }
+        public final String target;
+        int topic = -1;
+        public Event(String type, String data){ this(type, data, null); }
+        public Event(String type, String data, String target){ this.type=type; this.data=data; this.target=target; }
+    }
+
+    static final class Topic {
+        final String name;
+        int[] direct = new int[0];
+        int[] batched = new int[0];
+        Topic(String name){ this.name=name; }
+    }
+
+    interface Receiver {
+        void direct(int proc, int index, Event e);
+        void batched(int proc, int topic, Event e);
     }
 
     private final OSRustAdapter adapter = new OSRustAdapter();
     private final List<OSProcess> processes = new ArrayList<>();
     private final ArrayDeque<Event> events = new ArrayDeque<>();
-    private int tick = 0;
+    private final Map<String, Integer> topicIds = new HashMap<>();
+    private final List<Topic> topics = new ArrayList<>();
+    private final Map<String, Integer> pidIndex = new HashMap<>();
+    private final IdentityHashMap<OSProcess, Integer> procIndex = new IdentityHashMap<>();
+    private int[] subscriptions = new int[0];
+    private int[] legacy = new int[0];
+    private volatile int tick = 0;
+
+    static final class Outbox {
+        final ArrayList<Event> events = new ArrayList<>();
+        int[] origin = new int[16];
+        int current;
+        int[] inbox = new int[16];
+        int inboxSize;
+        final TreeMap<Integer, List<Event>> batches = new TreeMap<>();
+
+        void add(Event e){
+            if (events.size() == origin.length) origin = Arrays.copyOf(origin, origin.length * 2);
+            origin[events.size()] = current;
+            events.add(e);
+        }
+
+        void deliver(int index){
+            if (inboxSize == inbox.length) inbox = Arrays.copyOf(inbox, inboxSize * 2);
+            inbox[inboxSize++] = index;
+        }
+    }
+
+    private final ThreadLocal<Outbox> outbox = new ThreadLocal<>();
+    private Scheduler scheduler;
+    private Outbox[] outboxes = new Outbox[0];
+    private int[] priorities = new int[0];
+    private long[] eventCost = new long[0];
+    private long[] tickCost = new long[0];
+    private long[] spent = new long[0];
+    private boolean[] demoted = new boolean[0];
+    private long[] cpuNanos = new long[0];
+    private long[] overruns = new long[0];
+    private long timeSliceNanos = 0;
+    private DiskIO disk;
+    private Path diskDir = Path.of("os-disk");
+    private boolean diskDurable = true;
+    private long diskLingerNanos = 0;
+    private final ConcurrentLinkedQueue<Event> completions = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<String, AtomicInteger> ioPending = new ConcurrentHashMap<>();
 
-    public void register(OSProcess p){
+    public synchronized void register(OSProcess p){
+        int i = processes.size();
         processes.add(p);
+        procIndex.put(p, i);
+        pidIndex.putIfAbsent(p.pid(), i);
+        subscriptions = Arrays.copyOf(subscriptions, i + 1);
+        legacy = Arrays.copyOf(legacy, legacy.length + 1);
+        legacy[legacy.length - 1] = i;
     }
 
     public void start(){
         for (OSProcess p : processes) p.onStart(this);
     }
 
+    public synchronized int topic(String type){
+        Integer id = topicIds.get(type);
+        if (id != null) return id;
+        int t = topics.size();
+        topics.add(new Topic(type));
+        topicIds.put(type, t);
+        return t;
+    }
+
+    public synchronized String topicName(int id){ return topics.get(id).name; }
+
+    public void subscribe(OSProcess p, String type){
+        subscribe(p, type, false);
+    }
+
+    public void subscribeBatch(OSProcess p, String type){
+        subscribe(p, type, true);
+    }
+
+    private synchronized void subscribe(OSProcess p, String type, boolean batch){
+        int i = index(p);
+        Topic t = topics.get(topic(type));
+        int[] keep = batch ? t.batched : t.direct;
+        int[] drop = batch ? t.direct : t.batched;
+        if (Arrays.binarySearch(drop, i) >= 0) {
+            if (batch) t.direct = remove(drop, i);
+            else t.batched = remove(drop, i);
+            subscriptions[i]--;
+        }
+        if (Arrays.binarySearch(keep, i) >= 0) return;
+        if (batch) t.batched = insert(keep, i);
+        else t.direct = insert(keep, i);
+        if (subscriptions[i]++ == 0) legacy = remove(legacy, i);
+    }
+
+    public synchronized void unsubscribe(OSProcess p, String type){
+        int i = index(p);
+        Integer id = topicIds.get(type);
+        if (id == null) return;
+        Topic t = topics.get(id);
+        if (Arrays.binarySearch(t.direct, i) >= 0) t.direct = remove(t.direct, i);
+        else if (Arrays.binarySearch(t.batched, i) >= 0) t.batched = remove(t.batched, i);
+        else return;
+        if (--subscriptions[i] == 0) legacy = insert(legacy, i);
+    }
+
+    private int index(OSProcess p){
+        Integer i = procIndex.get(p);
+        if (i == null) throw new IllegalArgumentException("process not registered: " + p.pid());
+        return i;
+    }
+
+    private static int[] insert(int[] a, int v){
+        int pos = -Arrays.binarySearch(a, v) - 1;
+        int[] out = new int[a.length + 1];
+        System.arraycopy(a, 0, out, 0, pos);
+        out[pos] = v;
+        System.arraycopy(a, pos, out, pos + 1, a.length - pos);
+        return out;
+    }
+
+    private static int[] remove(int[] a, int v){
+        int pos = Arrays.binarySearch(a, v);
+        int[] out = new int[a.length - 1];
+        System.arraycopy(a, 0, out, 0, pos);
+        System.arraycopy(a, pos + 1, out, pos, a.length - pos - 1);
+        return out;
+    }
+
+    public void setWorkers(int workers){
+        if (scheduler != null) scheduler.close();
+        scheduler = workers > 1 ? new Scheduler(workers) : null;
+    }
+
+    public void setTimeSlice(long nanos){
+        timeSliceNanos = Math.max(0, nanos);
+    }
+
+    public int workers(){ return scheduler != null ? scheduler.workers() : 1; }
+
     public void pushEvent(String type, String data){
-        events.add(new Event(type, data));
+        pushEvent(type, data, null);
+    }
+
+    public void pushEvent(String type, String data, String targetPid){
+        Event e = new Event(type, data, targetPid);
+        Outbox o = scheduler != null ? outbox.get() : null;
+        if (o != null) o.add(e);
+        else events.add(e);
+    }
+
+    private void route(Event e, int index, Receiver r){
+        if (e.topic < 0) e.topic = topic(e.type);
+        Topic t = topics.get(e.topic);
+        if (e.target != null) {
+            Integer i = pidIndex.get(e.target);
+            if (i == null) return;
+            if (subscriptions[i] == 0 || Arrays.binarySearch(t.direct, i) >= 0) r.direct(i, index, e);
+            else if (Arrays.binarySearch(t.batched, i) >= 0) r.batched(i, e.topic, e);
+            return;
+        }
+        int[] a = legacy, b = t.direct;
+        int x = 0, y = 0;
+        while (x < a.length || y < b.length) {
+            if (y >= b.length || (x < a.length && a[x] < b[y])) r.direct(a[x++], index, e);
+            else r.direct(b[y++], index, e);
+        }
+        for (int i : t.batched) r.batched(i, e.topic, e);
     }
 
     public void step(){
+        if (scheduler != null) {
+            stepParallel();
+            return;
+        }
         tick++;
+        drainCompletions();
+        TreeMap<Long, List<Event>> batches = new TreeMap<>();
+        Receiver r = new Receiver() {
+            public void direct(int proc, int index, Event e){ processes.get(proc).onEvent(e, Kernel.this); }
+            public void batched(int proc, int topic, Event e){ batches.computeIfAbsent(((long) proc << 32) | topic, k -> new ArrayList<>()).add(e); }
+        };
         while (!events.isEmpty()){
-            Event e = events.poll();
-            for (OSProcess p : processes) p.onEvent(e, this);
+            ArrayList<Event> round = new ArrayList<>(events);
+            events.clear();
+            for (int i=0;i<round.size();i++) route(round.get(i), i, r);
+            while (!batches.isEmpty()) {
+                Map.Entry<Long, List<Event>> en = batches.pollFirstEntry();
+                long key = en.getKey();
+                processes.get((int) (key >>> 32)).onEvents(topicName((int) key), en.getValue(), this);
+            }
         }
         for (OSProcess p : processes){
             p.onTick(this);
         }
     }
 
+    private void stepParallel(){
+        tick++;
+        drainCompletions();
+        int n = processes.size();
+        if (outboxes.length < n) {
+            int old = outboxes.length;
+            outboxes = Arrays.copyOf(outboxes, n);
+            for (int i=old;i<n;i++) outboxes[i] = new Outbox();
+            eventCost = Arrays.copyOf(eventCost, n);
+            tickCost = Arrays.copyOf(tickCost, n);
+            spent = new long[n];
+            demoted = Arrays.copyOf(demoted, n);
+            cpuNanos = Arrays.copyOf(cpuNanos, n);
+            overruns = Arrays.copyOf(overruns, n);
+            priorities = new int[n];
+        }
+        for (int i=0;i<n;i++) {
+            priorities[i] = demoted[i] ? Integer.MIN_VALUE : processes.get(i).priority();
+            spent[i] = 0;
+        }
+        Receiver r = new Receiver() {
+            public void direct(int proc, int index, Event e){ outboxes[proc].deliver(index); }
+            public void batched(int proc, int topic, Event e){ outboxes[proc].batches.computeIfAbsent(topic, k -> new ArrayList<>()).add(e); }
+        };
+        int[] active = new int[n];
+        ArrayList<Event> round = new ArrayList<>(events);
+        events.clear();
+        while (!round.isEmpty()) {
+            List<Event> batch = round;
+            for (int i=0;i<batch.size();i++) route(batch.get(i), i, r);
+            int count = 0;
+            for (int i=0;i<n;i++) {
+                Outbox o = outboxes[i];
+                if (o.inboxSize > 0 || !o.batches.isEmpty()) active[count++] = i;
+            }
+            scheduler.run(count, active, priorities, eventCost, i -> {
+                Outbox o = enter(i);
+                try {
+                    OSProcess p = processes.get(i);
+                    for (int k=0;k<o.inboxSize;k++) {
+                        o.current = o.inbox[k];
+                        p.onEvent(batch.get(o.inbox[k]), this);
+                    }
+                    o.current = batch.size();
+                    for (Map.Entry<Integer, List<Event>> en : o.batches.entrySet()) p.onEvents(topicName(en.getKey()), en.getValue(), this);
+                } finally {
+                    o.inboxSize = 0;
+                    o.batches.clear();
+                    outbox.remove();
+                }
+            });
+            int[] offsets = new int[batch.size() + 2];
+            int total = 0;
+            for (int j=0;j<count;j++) {
+                spent[active[j]] += eventCost[active[j]];
+                Outbox o = outboxes[active[j]];
+                for (int k=0;k<o.events.size();k++) offsets[o.origin[k] + 1]++;
+                total += o.events.size();
+            }
+            for (int e=1;e<offsets.length;e++) offsets[e] += offsets[e-1];
+            Event[] next = new Event[total];
+            for (int j=0;j<count;j++) {
+                Outbox o = outboxes[active[j]];
+                for (int k=0;k<o.events.size();k++) next[offsets[o.origin[k]]++] = o.events.get(k);
+                o.events.clear();
+            }
+            round = new ArrayList<>(Arrays.asList(next));
+        }
+        scheduler.run(n, null, priorities, tickCost, i -> {
+            enter(i);
+            try {
+                processes.get(i).onTick(this);
+            } finally {
+                outbox.remove();
+            }
+        });
+        for (int i=0;i<n;i++) {
+            events.addAll(outboxes[i].events);
+            outboxes[i].events.clear();
+            long c = spent[i] + tickCost[i];
+            cpuNanos[i] += c;
+            demoted[i] = timeSliceNanos > 0 && c > timeSliceNanos;
+            if (demoted[i]) overruns[i]++;
+        }
+    }
+
+    private Outbox enter(int i){
+        Outbox o = outboxes[i];
+        o.events.clear();
+        o.current = 0;
+        outbox.set(o);
+        return o;
+    }
+
+    public String schedulerStats(){
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"workers\":").append(workers());
+        sb.append(",\"time_slice_ns\":").append(timeSliceNanos);
+        sb.append(",\"steals\":").append(scheduler != null ? scheduler.steals() : 0);
+        sb.append(",\"dispatched\":").append(scheduler != null ? scheduler.tasks() : 0);
+        sb.append(",\"processes\":[");
+        int n = Math.min(processes.size(), cpuNanos.length);
+        for (int i=0;i<n;i++) {
+            if (i>0) sb.append(',');
+            sb.append("{\"pid\":\"").append(processes.get(i).pid()).append("\",\"priority\":").append(processes.get(i).priority());
+            sb.append(",\"cpu_ns\":").append(cpuNanos[i]).append(",\"overruns\":").append(overruns[i]).append(",\"demoted\":").append(demoted[i]).append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
     public int tick(){ return tick; }
 
     public String memAlloc(int size){
+        if (adapter.mode() == OSRustAdapter.Mode.JAVA) return String.valueOf(adapter.memory().alloc(Math.max(0, size)));
         String req = "{\"op\":\"alloc\",\"size\":" + size + "}";
         String out = adapter.execute(req);
         int id = (int) extractNumber(out, "id");
@@ -59,12 +366,21 @@ public class Kernel {
     }
 
     public void memWrite(String id, byte[] data){
+        if (adapter.mode() == OSRustAdapter.Mode.JAVA) {
+            int h = Integer.parseInt(id);
+            SlabAllocator m = adapter.memory();
+            synchronized (m) {
+                if (m.valid(h)) m.store(h, data);
+            }
+            return;
+        }
         String b64 = Base64.getEncoder().encodeToString(data);
         String req = "{\"op\":\"write\",\"id\":" + id + ",\"data\":\"" + b64 + "\"}";
         adapter.execute(req);
     }
 
     public byte[] memRead(String id){
+        if (adapter.mode() == OSRustAdapter.Mode.JAVA) return adapter.memory().load(Integer.parseInt(id));
         String req = "{\"op\":\"read\",\"id\":" + id + "}";
         String out = adapter.execute(req);
         String b64 = extractString(out, "data");
@@ -73,16 +389,124 @@ public class Kernel {
     }
 
     public void memFree(String id){
+        if (adapter.mode() == OSRustAdapter.Mode.JAVA) {
+            int h = Integer.parseInt(id);
+            SlabAllocator m = adapter.memory();
+            synchronized (m) {
+                if (m.valid(h)) m.free(h);
+            }
+            return;
+        }
         String req = "{\"op\":\"free\",\"id\":" + id + "}";
         adapter.execute(req);
     }
 
+    public int memAllocHandle(int size){
+        return adapter.memory().alloc(size);
+    }
+
+    public ByteBuffer memView(int handle){
+        return adapter.memory().view(handle);
+    }
+
+    public void memWrite(int handle, int offset, byte[] src, int from, int len){
+        adapter.memory().write(handle, offset, src, from, len);
+    }
+
+    public int memRead(int handle, int offset, byte[] dst, int from, int len){
+        return adapter.memory().read(handle, offset, dst, from, len);
+    }
+
+    public void memStore(int handle, byte[] data){
+        adapter.memory().store(handle, data);
+    }
+
+    public void memFree(int handle){
+        adapter.memory().free(handle);
+    }
+
+    public String memStats(){
+        return adapter.memory().stats();
+    }
+
+    public synchronized void setDisk(Path dir, boolean durable, long groupCommitNanos){
+        if (disk != null) throw new IllegalStateException("disk already started");
+        diskDir = dir;
+        diskDurable = durable;
+        diskLingerNanos = groupCommitNanos;
+    }
+
+    private synchronized DiskIO disk(){
+        if (disk == null) disk = new DiskIO(diskDir, diskDurable, diskLingerNanos, this::completed);
+        return disk;
+    }
+
+    public long diskWrite(OSProcess p, String file, long offset, byte[] data){
+        AtomicInteger n = ioPending.computeIfAbsent(p.pid(), k -> new AtomicInteger());
+        n.incrementAndGet();
+        try {
+            return disk().write(p.pid(), file, offset, data);
+        } catch (RuntimeException e) {
+            n.decrementAndGet();
+            throw e;
+        }
+    }
+
+    public long diskRead(OSProcess p, String file, long offset, int length){
+        AtomicInteger n = ioPending.computeIfAbsent(p.pid(), k -> new AtomicInteger());
+        n.incrementAndGet();
+        try {
+            return disk().read(p.pid(), file, offset, length);
+        } catch (RuntimeException e) {
+            n.decrementAndGet();
+            throw e;
+        }
+    }
+
+    public int ioPending(OSProcess p){
+        AtomicInteger n = ioPending.get(p.pid());
+        return n != null ? n.get() : 0;
+    }
+
+    public synchronized String diskStats(){
+        return disk != null ? disk.stats() : "{}";
+    }
+
+    private void completed(DiskIO.Request r){
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"req\":").append(r.id).append(",\"op\":\"").append(r.write ? "disk_write" : "disk_read").append("\",\"file\":\"").append(r.file).append('"');
+        if (r.error != null) {
+            sb.append(",\"ok\":false,\"error\":\"").append(r.error.getClass().getSimpleName()).append('"');
+        } else {
+            sb.append(",\"ok\":true,\"bytes\":").append(r.bytes);
+            if (r.result != null) {
+                int h = adapter.memory().alloc(r.result.length);
+                adapter.memory().store(h, r.result);
+                sb.append(",\"handle\":").append(h);
+            }
+        }
+        completions.add(new Event("io_done", sb.append('}').toString(), r.pid));
+    }
+
+    private void drainCompletions(){
+        Event e;
+        while ((e = completions.poll()) != null) {
+            AtomicInteger n = ioPending.get(e.target);
+            if (n != null) n.decrementAndGet();
+            events.add(e);
+        }
+    }
+
     public String io(String kind, String data){
         String req = "{\"op\":\"io\",\"kind\":\"" + kind + "\",\"data\":\"" + data + "\"}";
         return adapter.execute(req);
     }
 
     public void shutdown(){
+        synchronized (this) {
+            if (disk != null) disk.close();
+        }
+        if (scheduler != null) scheduler.close();
         adapter.shutdown();
     }
 
@@ -112,7 +536,7 @@ public class Kernel {
     public static class ComputeProc implements OSProcess {
         private final String id;
         private State st = State.NEW;
-        private String memId;
+        private int mem;
         private double a = 2.0;
         private double b = 3.0;
         private int x = 0;
@@ -120,7 +544,8 @@ public class Kernel {
         public String pid(){ return id; }
         public State state(){ return st; }
         public void onStart(Kernel k){
-            memId = k.memAlloc(64);
+            mem = k.memAllocHandle(64);
+            k.subscribe(this, "io_ack");
             st = State.READY;
         }
         public void onTick(Kernel k){
@@ -128,7 +553,7 @@ public class Kernel {
             x++;
             double y = a * x + b;
             String s = "{\"pid\":\"" + id + "\",\"tick\":" + k.tick() + ",\"x\":" + x + ",\"y\":" + y + "}";
-            k.memWrite(memId, s.getBytes(StandardCharsets.UTF_8));
+            k.memStore(mem, s.getBytes(StandardCharsets.UTF_8));
             if (x % 3 == 0) k.pushEvent("compute_done", id);
             st = State.READY;
         }
@@ -145,19 +570,25 @@ public class Kernel {
         public String pid(){ return id; }
         public State state(){ return st; }
         public void onStart(Kernel k){
+            k.subscribe(this, "compute_done");
+            k.subscribe(this, "io_done");
             st = State.READY;
         }
         public void onTick(Kernel k){
+            if (st == State.WAITING) return;
             st = State.RUNNING;
             counter++;
-            String payload = Base64.getEncoder().encodeToString(("io:" + id + ":" + k.tick()).getBytes(StandardCharsets.UTF_8));
-            String out = k.io("disk_write", payload);
-            k.pushEvent("io_ack", id);
+            byte[] payload = ("io:" + id + ":" + k.tick() + "\n").getBytes(StandardCharsets.UTF_8);
+            k.diskWrite(this, id + ".log", -1, payload);
             st = State.WAITING;
-            st = State.READY;
         }
         public void onEvent(Event e, Kernel k){
-            if (e.type.equals("compute_done")) st = State.READY;
+            if (e.type.equals("io_done")) {
+                st = State.READY;
+                k.pushEvent("io_ack", id);
+            } else if (e.type.equals("compute_done") && st != State.WAITING) {
+                st = State.READY;
+            }
         }
     }
 }
@@ -3,8 +3,11 @@ package os;
 public class Main {
     public static void main(String[] args) {
         Kernel k = new Kernel();
+        k.setWorkers(args.length > 0 ? Integer.parseInt(args[0]) : 1);
         k.register(new Kernel.ComputeProc("P1"));
         k.register(new Kernel.IOProc("P2"));
+        int extra = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        for (int i=0;i<extra;i++) k.register(i % 2 == 0 ? new Kernel.ComputeProc("C" + i) : new Kernel.IOProc("D" + i));
         k.start();
         for (int i=0;i<5;i++){
             k.step();
@@ -7,16 +7,13 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Base64;
-import java.util.HashMap;
-import java.util.Map;
 
 public class OSRustAdapter {
     public enum Mode { JNI, IPC, JAVA }
     private Mode mode = Mode.JAVA;
     private Process ipcProcess;
 
-    private final Map<Integer, byte[]> mem = new HashMap<>();
-    private int nextId = 1;
+    private final SlabAllocator memory = new SlabAllocator();
 
     public OSRustAdapter() {
         init();
@@ -73,6 +70,9 @@ public class OSRustAdapter {
         }
     }
 
+    public Mode mode() { return mode; }
+    public SlabAllocator memory() { return memory; }
+
     public String execute(String requestJson) {
         switch (mode) {
             case JNI:
@@ -100,29 +100,32 @@ public class OSRustAdapter {
         }
     }
 
-    private String executeJava(String requestJson) {
+    private synchronized String executeJava(String requestJson) {
         if (requestJson.contains("\"op\":\"alloc\"")) {
             int size = (int) extractNumber(requestJson, "size");
-            int id = nextId++;
-            mem.put(id, new byte[Math.max(0, size)]);
+            int id = memory.alloc(Math.max(0, size));
             return "{\"ok\":true,\"result\":{\"id\":" + id + "},\"mode\":\"JAVA\"}";
         }
         if (requestJson.contains("\"op\":\"write\"")) {
             int id = (int) extractNumber(requestJson, "id");
             String dataB64 = extractString(requestJson, "data");
             byte[] bytes = Base64.getDecoder().decode(dataB64);
-            mem.put(id, bytes);
+            synchronized (memory) {
+                if (memory.valid(id)) memory.store(id, bytes);
+            }
             return "{\"ok\":true,\"result\":{},\"mode\":\"JAVA\"}";
         }
         if (requestJson.contains("\"op\":\"read\"")) {
             int id = (int) extractNumber(requestJson, "id");
-            byte[] bytes = mem.getOrDefault(id, new byte[0]);
+            byte[] bytes = memory.load(id);
             String out = Base64.getEncoder().encodeToString(bytes);
             return "{\"ok\":true,\"result\":{\"data\":\"" + out + "\"},\"mode\":\"JAVA\"}";
         }
         if (requestJson.contains("\"op\":\"free\"")) {
             int id = (int) extractNumber(requestJson, "id");
-            mem.remove(id);
+            synchronized (memory) {
+                if (memory.valid(id)) memory.free(id);
+            }
             return "{\"ok\":true,\"result\":{},\"mode\":\"JAVA\"}";
         }
         if (requestJson.contains("\"op\":\"io\"")) {
@@ -0,0 +1,145 @@
+package os;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+final class Scheduler implements AutoCloseable {
+    interface Task {
+        void run(int index);
+    }
+
+    static final class RunQueue {
+        private int[] items = new int[16];
+        private int size;
+        private long load;
+        private final AtomicLong bounds = new AtomicLong();
+
+        void reset() {
+            size = 0;
+            load = 0;
+            bounds.set(0);
+        }
+
+        void add(int index, long cost) {
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            items[size++] = index;
+            load += cost;
+        }
+
+        void publish() {
+            bounds.set(size);
+        }
+
+        int take() {
+            while (true) {
+                long b = bounds.get();
+                int head = (int) (b >>> 32), tail = (int) b;
+                if (head >= tail) return -1;
+                if (bounds.compareAndSet(b, b + (1L << 32))) return items[head];
+            }
+        }
+
+        int steal() {
+            while (true) {
+                long b = bounds.get();
+                int head = (int) (b >>> 32), tail = (int) b;
+                if (head >= tail) return -1;
+                if (bounds.compareAndSet(b, b - 1)) return items[tail - 1];
+            }
+        }
+    }
+
+    private final int workers;
+    private final RunQueue[] queues;
+    private final ExecutorService pool;
+    private final LongAdder steals = new LongAdder();
+    private final LongAdder tasks = new LongAdder();
+    private long[] keys = new long[0];
+
+    Scheduler(int workers) {
+        this.workers = Math.max(1, workers);
+        this.queues = new RunQueue[this.workers];
+        for (int i=0;i<this.workers;i++) queues[i] = new RunQueue();
+        AtomicInteger ids = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(Math.max(1, this.workers - 1), r -> {
+            Thread t = new Thread(r, "os-sched-" + ids.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    void run(int count, int[] indices, int[] priorities, long[] cost, Task task) {
+        if (count == 0) return;
+        if (keys.length < count) keys = new long[Math.max(count, keys.length * 2)];
+        for (int j=0;j<count;j++) keys[j] = ((long) ~priorities[indices != null ? indices[j] : j] << 32) | j;
+        Arrays.sort(keys, 0, count);
+        for (RunQueue q : queues) q.reset();
+        for (int k=0;k<count;k++) {
+            int j = (int) keys[k];
+            int i = indices != null ? indices[j] : j;
+            RunQueue min = queues[0];
+            for (int w=1;w<workers;w++) if (queues[w].load < min.load) min = queues[w];
+            min.add(i, Math.max(1, cost[i]));
+        }
+        for (RunQueue q : queues) q.publish();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Future<?>> pending = new ArrayList<>(workers - 1);
+        for (int w=1;w<workers;w++) {
+            int self = w;
+            pending.add(pool.submit(() -> work(self, cost, task, failure)));
+        }
+        work(0, cost, task, failure);
+        for (Future<?> f : pending) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                failure.compareAndSet(null, e.getCause());
+            }
+        }
+        Throwable t = failure.get();
+        if (t instanceof RuntimeException) throw (RuntimeException) t;
+        if (t instanceof Error) throw (Error) t;
+        if (t != null) throw new IllegalStateException(t);
+    }
+
+    private void work(int self, long[] cost, Task task, AtomicReference<Throwable> failure) {
+        long done = 0;
+        while (true) {
+            int i = queues[self].take();
+            if (i < 0) {
+                for (int k=1;k<workers && i<0;k++) i = queues[(self + k) % workers].steal();
+                if (i < 0) break;
+                steals.increment();
+            }
+            long start = System.nanoTime();
+            try {
+                task.run(i);
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+            cost[i] = System.nanoTime() - start;
+            done++;
+        }
+        tasks.add(done);
+    }
+
+    int workers() { return workers; }
+    long steals() { return steals.sum(); }
+    long tasks() { return tasks.sum(); }
+
+    public void close() {
+        pool.shutdownNow();
+    }
+}
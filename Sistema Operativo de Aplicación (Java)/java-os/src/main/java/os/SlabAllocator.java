@@ -0,0 +1,230 @@
+package os;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class SlabAllocator {
+    static final int MIN_SHIFT = 4;
+    static final int MAX_SHIFT = 16;
+    static final int SLAB_BYTES = 1 << 20;
+    static final int INDEX_BITS = 24;
+    static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    static final int GENERATIONS = 1 << (31 - INDEX_BITS);
+    private static final byte[] ZERO = new byte[1 << MAX_SHIFT];
+
+    static final class SizeClass {
+        final int slotSize;
+        final int slotsPerSlab;
+        final List<ByteBuffer> slabs = new ArrayList<>();
+        int[] free = new int[64];
+        int freeCount;
+        int used;
+
+        SizeClass(int shift) {
+            this.slotSize = 1 << shift;
+            this.slotsPerSlab = Math.max(1, SLAB_BYTES / slotSize);
+        }
+
+        int take() {
+            if (freeCount == 0) {
+                int base = slabs.size() * slotsPerSlab;
+                slabs.add(ByteBuffer.allocateDirect(slotsPerSlab * slotSize));
+                if (free.length < slotsPerSlab) free = new int[slotsPerSlab];
+                for (int i = slotsPerSlab - 1; i >= 0; i--) free[freeCount++] = base + i;
+            }
+            used++;
+            return free[--freeCount];
+        }
+
+        void give(int slot) {
+            if (freeCount == free.length) free = Arrays.copyOf(free, free.length * 2);
+            free[freeCount++] = slot;
+            used--;
+        }
+
+        ByteBuffer view(int slot) {
+            return slabs.get(slot / slotsPerSlab).slice((slot % slotsPerSlab) * slotSize, slotSize);
+        }
+    }
+
+    private final SizeClass[] classes = new SizeClass[MAX_SHIFT - MIN_SHIFT + 1];
+    private ByteBuffer[] views = new ByteBuffer[64];
+    private int[] slots = new int[64];
+    private byte[] classOf = new byte[64];
+    private int[] lengths = new int[64];
+    private byte[] generations = new byte[64];
+    private int[] freeHandles = new int[16];
+    private int freeHandleCount;
+    private int nextHandle = 1;
+    private int live;
+    private long largeBytes;
+
+    public SlabAllocator() {
+        for (int i=0;i<classes.length;i++) classes[i] = new SizeClass(MIN_SHIFT + i);
+    }
+
+    static int sizeClass(int size) {
+        if (size <= 1 << MIN_SHIFT) return 0;
+        int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+        return shift > MAX_SHIFT ? -1 : shift - MIN_SHIFT;
+    }
+
+    public synchronized int alloc(int size) {
+        if (size < 0) throw new IllegalArgumentException("negative size");
+        int h;
+        if (freeHandleCount > 0) {
+            h = freeHandles[--freeHandleCount];
+        } else {
+            if (nextHandle > INDEX_MASK) throw new IllegalStateException("out of handles");
+            h = nextHandle++;
+            if (h >= slots.length) grow(slots.length * 2);
+        }
+        place(h, size);
+        zero(views[h], 0, views[h].capacity());
+        lengths[h] = size;
+        live++;
+        return generations[h] << INDEX_BITS | h;
+    }
+
+    private void place(int h, int size) {
+        int c = sizeClass(size);
+        ByteBuffer v;
+        if (c < 0) {
+            v = ByteBuffer.allocateDirect(size);
+            slots[h] = -1;
+            largeBytes += size;
+        } else {
+            slots[h] = classes[c].take();
+            v = classes[c].view(slots[h]);
+        }
+        classOf[h] = (byte) c;
+        views[h] = v;
+    }
+
+    private void release(int h) {
+        int c = classOf[h];
+        if (c < 0) largeBytes -= views[h].capacity();
+        else classes[c].give(slots[h]);
+    }
+
+    private void grow(int n) {
+        slots = Arrays.copyOf(slots, n);
+        classOf = Arrays.copyOf(classOf, n);
+        lengths = Arrays.copyOf(lengths, n);
+        views = Arrays.copyOf(views, n);
+        generations = Arrays.copyOf(generations, n);
+    }
+
+    private static void zero(ByteBuffer v, int from, int to) {
+        for (int p = from; p < to; p += ZERO.length) v.put(p, ZERO, 0, Math.min(ZERO.length, to - p));
+    }
+
+    public synchronized void free(int handle) {
+        int h = index(handle);
+        release(h);
+        generations[h] = (byte) ((generations[h] + 1) % GENERATIONS);
+        views[h] = null;
+        lengths[h] = 0;
+        if (freeHandleCount == freeHandles.length) freeHandles = Arrays.copyOf(freeHandles, freeHandleCount * 2);
+        freeHandles[freeHandleCount++] = h;
+        live--;
+    }
+
+    public synchronized void resize(int handle, int size) {
+        if (size < 0) throw new IllegalArgumentException("negative size");
+        int h = index(handle);
+        ByteBuffer old = views[h];
+        if (size <= old.capacity() && sizeClass(size) == classOf[h]) {
+            if (size < lengths[h]) zero(old, size, lengths[h]);
+            lengths[h] = size;
+            return;
+        }
+        int keep = Math.min(lengths[h], size);
+        release(h);
+        place(h, size);
+        ByteBuffer v = views[h];
+        v.put(0, old, 0, keep);
+        zero(v, keep, v.capacity());
+        lengths[h] = size;
+    }
+
+    private int index(int handle) {
+        int h = handle & INDEX_MASK;
+        if (handle <= 0 || h >= views.length || views[h] == null || generations[h] != handle >>> INDEX_BITS) {
+            throw new IllegalArgumentException("invalid handle " + handle);
+        }
+        return h;
+    }
+
+    public synchronized boolean valid(int handle) {
+        int h = handle & INDEX_MASK;
+        return handle > 0 && h < views.length && views[h] != null && generations[h] == handle >>> INDEX_BITS;
+    }
+
+    // A view is invalidated by a free, or by a write/store/resize that moves the block to a larger size class.
+    public synchronized ByteBuffer view(int handle) {
+        int h = index(handle);
+        ByteBuffer v = views[h].duplicate();
+        v.limit(lengths[h]);
+        return v;
+    }
+
+    public synchronized void write(int handle, int offset, byte[] src, int from, int len) {
+        if (offset < 0 || len < 0) throw new IllegalArgumentException("invalid write range");
+        int h = index(handle);
+        if (offset + len > views[h].capacity()) resize(handle, offset + len);
+        views[h].put(offset, src, from, len);
+        if (offset + len > lengths[h]) lengths[h] = offset + len;
+    }
+
+    public synchronized int read(int handle, int offset, byte[] dst, int from, int len) {
+        if (offset < 0 || len < 0) throw new IllegalArgumentException("invalid read range");
+        int h = index(handle);
+        int n = Math.min(len, lengths[h] - offset);
+        if (n <= 0) return 0;
+        views[h].get(offset, dst, from, n);
+        return n;
+    }
+
+    public synchronized void store(int handle, byte[] data) {
+        int h = index(handle);
+        int old = lengths[h];
+        if (data.length > views[h].capacity()) resize(handle, data.length);
+        ByteBuffer v = views[h];
+        v.put(0, data, 0, data.length);
+        if (data.length < old) zero(v, data.length, old);
+        lengths[h] = data.length;
+    }
+
+    public synchronized byte[] load(int handle) {
+        if (!valid(handle)) return new byte[0];
+        byte[] out = new byte[lengths[handle & INDEX_MASK]];
+        read(handle, 0, out, 0, out.length);
+        return out;
+    }
+
+    public synchronized int length(int handle) {
+        return lengths[index(handle)];
+    }
+
+    public synchronized int capacity(int handle) {
+        return views[index(handle)].capacity();
+    }
+
+    public synchronized String stats() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"live\":").append(live).append(",\"large_bytes\":").append(largeBytes).append(",\"classes\":[");
+        boolean first = true;
+        long reserved = largeBytes;
+        for (SizeClass c : classes) {
+            reserved += (long) c.slabs.size() * c.slotsPerSlab * c.slotSize;
+            if (c.slabs.isEmpty()) continue;
+            if (!first) sb.append(',');
+            first = false;
+            sb.append("{\"slot\":").append(c.slotSize).append(",\"slabs\":").append(c.slabs.size()).append(",\"used\":").append(c.used).append('}');
+        }
+        return sb.append("],\"reserved_bytes\":").append(reserved).append('}').toString();
+    }
+}